@@ -27,9 +27,9 @@ import gate.creole.metadata.Optional;
 import gate.creole.metadata.RunTime;
 import java.net.URL;
 
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * AbstractGazetteer This class implements the common-for-all methods of the
@@ -39,7 +39,11 @@ public abstract class AbstractGazetteer extends AbstractLanguageAnalyser impleme
 
 	private static final long serialVersionUID = 223125105523762358L;
 
-	protected Set<GazetteerListener> listeners = new HashSet<>();
+	/**
+	 * The listeners of the events, which may be fired by the thread
+	 * reloading the lists while listeners are added
+	 */
+	protected Set<GazetteerListener> listeners = new CopyOnWriteArraySet<>();
 
 	protected String annotationSetName;
 
@@ -0,0 +1,73 @@
+package regexgaz;
+
+import gate.Document;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The result of {@link RegexGazetteer#executeBatch(java.util.Collection)}:
+ * the number of documents annotated, the number of annotations added to them,
+ * the time the batch took and the documents that could not be annotated.
+ */
+public final class BatchReport {
+
+	private int documents;
+
+	private long matches;
+
+	private long nanos;
+
+	private final Map<Document, Throwable> failures = new LinkedHashMap<>();
+
+	BatchReport() {
+	}
+
+	void annotated(long documentMatches) {
+		documents++;
+		matches += documentMatches;
+	}
+
+	void failed(Document document, Throwable cause) {
+		failures.put(document, cause);
+	}
+
+	void finished(long batchNanos) {
+		nanos = batchNanos;
+	}
+
+	/**
+	 * @return the number of documents annotated
+	 */
+	public int getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * @return the number of annotations added to the documents
+	 */
+	public long getMatches() {
+		return matches;
+	}
+
+	/**
+	 * @return the time the batch took, in milliseconds
+	 */
+	public long getTimeMillis() {
+		return nanos / 1000000;
+	}
+
+	/**
+	 * @return the documents that could not be annotated, with the exception
+	 * thrown, in the order they failed
+	 */
+	public Map<Document, Throwable> getFailures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	@Override
+	public String toString() {
+		return documents + " documents, " + matches + " matches, " + failures.size() + " failures in "
+				+ getTimeMillis() + " ms";
+	}
+}
@@ -0,0 +1,85 @@
+package regexgaz;
+
+import java.util.Arrays;
+
+/**
+ * The offsets found by the scan of a text, grouped by key (an entry index,
+ * the id of a literal factor...). The offsets are added in any order, they
+ * are sorted once the scan is done.
+ */
+final class Candidates {
+
+	private static final int[] NO_OFFSETS = new int[0];
+
+	/**
+	 * the (key, offset) pairs
+	 */
+	private long[] hits = new long[64];
+
+	private int size;
+
+	void add(int key, int offset) {
+		if (size == hits.length) {
+			hits = Arrays.copyOf(hits, size * 2);
+		}
+		hits[size++] = ((long) key << 32) | offset;
+	}
+
+	/**
+	 * Sorts the offsets, to be called once all of them have been added
+	 */
+	Candidates sort() {
+		Arrays.sort(hits, 0, size);
+		return this;
+	}
+
+	/**
+	 * @return the sorted offsets of a key
+	 */
+	int[] getOffsets(int key) {
+		return getOffsets(key, -1, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return the sorted offsets of a key in ]from, to]
+	 */
+	int[] getOffsets(int key, int from, int to) {
+		int lo = lowerBound(((long) key << 32) | (from + 1L));
+		int end = lo;
+		while (end < size && (int) (hits[end] >>> 32) == key && (int) hits[end] <= to) {
+			end++;
+		}
+		if (end == lo) {
+			return NO_OFFSETS;
+		}
+		int[] offsets = new int[end - lo];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = (int) hits[lo + i];
+		}
+		return offsets;
+	}
+
+	/**
+	 * @return the index of the first hit not lower than a value
+	 */
+	private int lowerBound(long value) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (hits[mid] < value) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return true if nothing was found
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
@@ -0,0 +1,270 @@
+package regexgaz;
+
+import java.util.Arrays;
+import java.nio.CharBuffer;
+import java.util.BitSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of code points, i.e. what a single step of a regular expression can
+ * consume: a literal character, a character class, a predefined class or the
+ * dot.
+ */
+abstract class CharSet {
+
+	/**
+	 * The set matching any code point
+	 */
+	static final CharSet ANY = new CharSet() {
+		@Override
+		boolean contains(int cp) {
+			return true;
+		}
+
+		@Override
+		int maxCharCount() {
+			return 2;
+		}
+
+		@Override
+		public String toString() {
+			return "ANY";
+		}
+	};
+
+	/**
+	 * Checks whether a code point belongs to this set
+	 */
+	abstract boolean contains(int cp);
+
+	/**
+	 * @return the maximum number of chars (1 or 2) of the code points in this
+	 * set
+	 */
+	abstract int maxCharCount();
+
+	/**
+	 * @return the code points of this set if there are only a few of them,
+	 * null otherwise
+	 */
+	int[] enumerate() {
+		return null;
+	}
+
+	static CharSet of(int cp) {
+		return new Ranges(new int[]{cp, cp});
+	}
+
+	static CharSet not(final CharSet set) {
+		if (set instanceof Ranges) {
+			return ((Ranges) set).complement();
+		}
+		return new CharSet() {
+			@Override
+			boolean contains(int cp) {
+				return !set.contains(cp);
+			}
+
+			@Override
+			int maxCharCount() {
+				return 2;
+			}
+		};
+	}
+
+	static CharSet union(final CharSet a, final CharSet b) {
+		if (a instanceof Ranges && b instanceof Ranges) {
+			return ((Ranges) a).union((Ranges) b);
+		}
+		return new CharSet() {
+			@Override
+			boolean contains(int cp) {
+				return a.contains(cp) || b.contains(cp);
+			}
+
+			@Override
+			int maxCharCount() {
+				return Math.max(a.maxCharCount(), b.maxCharCount());
+			}
+		};
+	}
+
+	/**
+	 * A set defined by a sorted list of disjoint inclusive ranges
+	 */
+	static final class Ranges extends CharSet {
+
+		/**
+		 * the limit on the size of the sets returned by {@link #enumerate()}
+		 */
+		private static final int MAX_ENUMERATED = 64;
+
+		/**
+		 * pairs of [first, last] code points, sorted and disjoint
+		 */
+		private final int[] bounds;
+
+		Ranges(int[] bounds) {
+			this.bounds = normalize(bounds);
+		}
+
+		private static int[] normalize(int[] bounds) {
+			int n = bounds.length / 2;
+			long[] sorted = new long[n];
+			for (int i = 0; i < n; i++) {
+				sorted[i] = ((long) bounds[2 * i] << 32) | bounds[2 * i + 1];
+			}
+			Arrays.sort(sorted);
+			int[] result = new int[bounds.length];
+			int size = 0;
+			for (long range : sorted) {
+				int first = (int) (range >>> 32);
+				int last = (int) range;
+				if (size > 0 && first <= result[size - 1] + 1) {
+					result[size - 1] = Math.max(result[size - 1], last);
+				} else {
+					result[size++] = first;
+					result[size++] = last;
+				}
+			}
+			return Arrays.copyOf(result, size);
+		}
+
+		Ranges union(Ranges other) {
+			int[] all = Arrays.copyOf(bounds, bounds.length + other.bounds.length);
+			System.arraycopy(other.bounds, 0, all, bounds.length, other.bounds.length);
+			return new Ranges(all);
+		}
+
+		Ranges complement() {
+			int[] result = new int[bounds.length + 2];
+			int size = 0;
+			int next = 0;
+			for (int i = 0; i < bounds.length; i += 2) {
+				if (bounds[i] > next) {
+					result[size++] = next;
+					result[size++] = bounds[i] - 1;
+				}
+				next = bounds[i + 1] + 1;
+			}
+			if (next <= Character.MAX_CODE_POINT) {
+				result[size++] = next;
+				result[size++] = Character.MAX_CODE_POINT;
+			}
+			return new Ranges(Arrays.copyOf(result, size));
+		}
+
+		/**
+		 * @return true if some code point from first to last belongs to this
+		 * set
+		 */
+		boolean intersects(int first, int last) {
+			for (int i = 0; i < bounds.length; i += 2) {
+				if (bounds[i] <= last && bounds[i + 1] >= first) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		boolean contains(int cp) {
+			int lo = 0;
+			int hi = bounds.length / 2 - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (cp < bounds[2 * mid]) {
+					hi = mid - 1;
+				} else if (cp > bounds[2 * mid + 1]) {
+					lo = mid + 1;
+				} else {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		int maxCharCount() {
+			return bounds.length == 0 || bounds[bounds.length - 1] < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 1 : 2;
+		}
+
+		@Override
+		int[] enumerate() {
+			int size = 0;
+			for (int i = 0; i < bounds.length; i += 2) {
+				size += bounds[i + 1] - bounds[i] + 1;
+				if (size > MAX_ENUMERATED) {
+					return null;
+				}
+			}
+			int[] result = new int[size];
+			int k = 0;
+			for (int i = 0; i < bounds.length; i += 2) {
+				for (int cp = bounds[i]; cp <= bounds[i + 1]; cp++) {
+					result[k++] = cp;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Ranges && Arrays.equals(bounds, ((Ranges) obj).bounds);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(bounds);
+		}
+
+		@Override
+		public String toString() {
+			return Arrays.toString(bounds);
+		}
+	}
+
+	/**
+	 * A set whose members are decided by java.util.regex itself. It is used for
+	 * the constructs whose exact semantics depend on the JDK (unicode
+	 * properties, case insensitive classes...). The membership of the BMP
+	 * characters is computed once.
+	 */
+	static final class JavaClass extends CharSet {
+
+		private final Pattern pattern;
+
+		private final BitSet bmp = new BitSet(Character.MIN_SUPPLEMENTARY_CODE_POINT);
+
+		JavaClass(String regex, int flags) {
+			pattern = Pattern.compile(regex, flags);
+			final char[] buffer = new char[1];
+			Matcher matcher = pattern.matcher(CharBuffer.wrap(buffer));
+			for (int c = 0; c < Character.MIN_SUPPLEMENTARY_CODE_POINT; c++) {
+				buffer[0] = (char) c;
+				if (matcher.reset().matches()) {
+					bmp.set(c);
+				}
+			}
+		}
+
+		@Override
+		boolean contains(int cp) {
+			if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+				return bmp.get(cp);
+			}
+			return pattern.matcher(new String(Character.toChars(cp))).matches();
+		}
+
+		@Override
+		int maxCharCount() {
+			return 2;
+		}
+
+		@Override
+		public String toString() {
+			return pattern.pattern();
+		}
+	}
+}
@@ -0,0 +1,300 @@
+package regexgaz;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A gazetteer entry ready to be matched against a document. Instances are
+ * built once by {@link RegexGazetteer#init()}, or by a reload of their list,
+ * and are never modified afterwards, so they can be safely shared between
+ * several gazetteer instances (see {@link SharedDefaultGazetteer}) and read
+ * concurrently. An entry does not know its position in a compiled-entry
+ * table, so that the entries of a list are shared by all the selections of
+ * the lists including it.
+ */
+public final class CompiledEntry {
+
+	/**
+	 * the node (~lst file) this entry belongs to
+	 */
+	private final LinearNode node;
+
+	/**
+	 * the entry as read from the gazetteer list
+	 */
+	private final GazetteerNode gazNode;
+
+	/**
+	 * the description of the annotations created for this entry
+	 */
+	private final Lookup lookup;
+
+	/**
+	 * the features shared by all the annotations of this entry, computed once
+	 * from its lookup: the major type, the minor type, the languages and the
+	 * features of the entry, in this order
+	 */
+	private final String[] featureNames;
+
+	private final Object[] featureValues;
+
+	/**
+	 * the characters that make an entry a regular expression rather than a
+	 * literal phrase
+	 */
+	private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	/**
+	 * the pattern of the entry, including the word boundaries if any, or null
+	 * for a literal entry
+	 */
+	private final Pattern pattern;
+
+	/**
+	 * the pattern compiled by the engine matching the entry, or null for a
+	 * literal entry
+	 */
+	private final EntryRegex regex;
+
+	/**
+	 * the syntax tree of the pattern, shared by the structures built from the
+	 * entry, or null for a literal entry or a pattern that cannot be parsed
+	 */
+	private final RegexParser.Node tree;
+
+	/**
+	 * the reason why the pattern cannot be parsed, or null
+	 */
+	private final String unparsed;
+
+	/**
+	 * the reason why the linear-time engine, chosen for the list of the
+	 * entry, does not support its pattern, or null
+	 */
+	private final String linearUnsupported;
+
+	/**
+	 * true if the entry starts with a letter and has to be matched at the
+	 * beginning of a word
+	 */
+	private final boolean boundaryStart;
+
+	/**
+	 * true if the entry ends with a letter and has to be matched at the end of
+	 * a word
+	 */
+	private final boolean boundaryEnd;
+
+	/**
+	 * true if the entry is a plain phrase, matched with the FSM of the
+	 * gazetteer rather than with its pattern
+	 */
+	private final boolean literal;
+
+	/**
+	 * Compiles one entry of a gazetteer list. A literal entry is matched by
+	 * the trie or the minimal automaton of the gazetteer only, so it is not
+	 * compiled into a pattern.
+	 *
+	 * @param node the node the entry belongs to
+	 * @param gazNode the entry
+	 * @param lookup the description of the annotations to be created for the
+	 * entry
+	 * @param linear true if the pattern is to be matched by the linear-time
+	 * engine, which falls back to java.util.regex if it does not support it
+	 * @param javaClasses the cache of the character sets computed with
+	 * java.util.regex while parsing the patterns, shared by the entries of the
+	 * gazetteer
+	 * @throws PatternSyntaxException if the entry is not a valid regular
+	 * expression
+	 */
+	CompiledEntry(LinearNode node, GazetteerNode gazNode, Lookup lookup, boolean linear,
+			Map<String, CharSet> javaClasses) {
+		String entry = gazNode.getEntry();
+		this.node = node;
+		this.gazNode = gazNode;
+		this.lookup = lookup;
+		int size = 1 + (lookup.minorType != null ? 1 : 0) + (lookup.languages != null ? 1 : 0)
+				+ (lookup.features != null ? lookup.features.size() : 0);
+		featureNames = new String[size];
+		featureValues = new Object[size];
+		int k = 0;
+		featureNames[k] = Constants.LOOKUP_MAJOR;
+		featureValues[k++] = lookup.majorType;
+		if (lookup.minorType != null) {
+			featureNames[k] = Constants.LOOKUP_MINOR;
+			featureValues[k++] = lookup.minorType;
+		}
+		if (lookup.languages != null) {
+			featureNames[k] = Constants.LOOKUP_LANG;
+			featureValues[k++] = lookup.languages;
+		}
+		if (lookup.features != null) {
+			for (Map.Entry<String, Object> feature : lookup.features.entrySet()) {
+				featureNames[k] = feature.getKey();
+				featureValues[k++] = feature.getValue();
+			}
+		}
+		//if first or last character is a letter add \b to entry to match whole words only
+		boundaryStart = Character.isLetter(entry.charAt(0));
+		boundaryEnd = Character.isLetter(entry.charAt(entry.length() - 1));
+		literal = isLiteral(entry);
+		if (literal) {
+			pattern = null;
+			this.regex = null;
+			tree = null;
+			unparsed = null;
+			linearUnsupported = null;
+			return;
+		}
+		String regex = entry;
+		if (boundaryStart) {
+			regex = "\\b" + regex;
+		}
+		if (boundaryEnd) {
+			regex = regex + "\\b";
+		}
+		pattern = Pattern.compile(regex, Pattern.DOTALL);
+		RegexParser.Node parsed = null;
+		String reason = null;
+		try {
+			parsed = RegexParser.parse(regex, Pattern.DOTALL, javaClasses);
+		} catch (RegexParser.UnsupportedRegexException ex) {
+			reason = ex.getMessage();
+		}
+		tree = parsed;
+		unparsed = reason;
+		EntryRegex compiled = null;
+		if (linear) {
+			if (tree != null) {
+				try {
+					compiled = LinearRegex.compile(tree);
+				} catch (RegexParser.UnsupportedRegexException ex) {
+					reason = ex.getMessage();
+				}
+			}
+			linearUnsupported = compiled == null ? reason : null;
+		} else {
+			linearUnsupported = null;
+		}
+		this.regex = compiled != null ? compiled : new JavaRegex(pattern);
+	}
+
+	/**
+	 * Checks whether an entry is a plain phrase: it does not contain any
+	 * regular expression metacharacter and it is not made of whitespace only.
+	 */
+	public static boolean isLiteral(String entry) {
+		if (entry.trim().isEmpty()) {
+			return false;
+		}
+		for (int i = 0; i < entry.length(); i++) {
+			if (METACHARACTERS.indexOf(entry.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public LinearNode getLinearNode() {
+		return node;
+	}
+
+	public GazetteerNode getGazetteerNode() {
+		return gazNode;
+	}
+
+	/**
+	 * @return the entry as written in the gazetteer list
+	 */
+	public String getEntry() {
+		return gazNode.getEntry();
+	}
+
+	public Lookup getLookup() {
+		return lookup;
+	}
+
+	/**
+	 * Puts the features shared by all the annotations of this entry into the
+	 * features of a new annotation
+	 */
+	void putFeatures(Map<Object, Object> features) {
+		for (int k = 0; k < featureNames.length; k++) {
+			features.put(featureNames[k], featureValues[k]);
+		}
+	}
+
+	/**
+	 * @return the pattern of the entry, or null if the entry is literal
+	 */
+	public Pattern getPattern() {
+		return pattern;
+	}
+
+	/**
+	 * @return the pattern compiled by the engine matching the entry, see
+	 * {@link RegexGazetteer#getRegexEngine()}, or null if the entry is
+	 * literal
+	 */
+	EntryRegex getRegex() {
+		return regex;
+	}
+
+	/**
+	 * @return the syntax tree of the pattern, or null if the entry is literal
+	 * or its pattern uses a construct that {@link RegexParser} does not
+	 * support, see {@link #getUnparsedReason()}
+	 */
+	RegexParser.Node getTree() {
+		return tree;
+	}
+
+	/**
+	 * @return the reason why the pattern of the entry could not be parsed, or
+	 * null
+	 */
+	String getUnparsedReason() {
+		return unparsed;
+	}
+
+	/**
+	 * @return the reason why the linear-time engine, chosen for the list of
+	 * the entry, does not support its pattern, in which case it is matched
+	 * by java.util.regex, or null
+	 */
+	String getLinearUnsupportedReason() {
+		return linearUnsupported;
+	}
+
+	/**
+	 * @return true if the entry is matched by the linear-time engine rather
+	 * than by java.util.regex
+	 */
+	public boolean isLinear() {
+		return regex instanceof LinearRegex;
+	}
+
+	public boolean hasBoundaryStart() {
+		return boundaryStart;
+	}
+
+	public boolean hasBoundaryEnd() {
+		return boundaryEnd;
+	}
+
+	/**
+	 * @return true if the entry is matched with the FSM of the gazetteer, in
+	 * which case any sequence of whitespace in the entry matches any sequence
+	 * of whitespace in the text
+	 */
+	public boolean isLiteral() {
+		return literal;
+	}
+
+	@Override
+	public String toString() {
+		return node.getList() + ":" + gazNode.getEntry();
+	}
+}
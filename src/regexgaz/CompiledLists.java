@@ -0,0 +1,98 @@
+package regexgaz;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The entries of a selection of the lists of a gazetteer, compiled, with the
+ * structures matching them: the trie or the minimal automaton of the literal
+ * entries, the automaton, the prefilter and the first character index of the
+ * regular expressions, and the maximum length of their matches. The indexes of the entries are
+ * their positions in this selection, whose lists are in the order of the
+ * whole compiled-entry table.
+ * <p>
+ * Instances are built by {@link RegexGazetteer} for the lists selected by
+ * its type filters, and are never modified afterwards, so they are shared by
+ * the threads and the {@link SharedDefaultGazetteer} duplicates using the
+ * same selection of the same version of the lists (see {@link ListsVersion}).
+ */
+final class CompiledLists {
+
+	final List<CompiledEntry> entries;
+
+	/**
+	 * the trie of the literal entries, or null if they are matched by their
+	 * minimal automaton
+	 */
+	final LiteralTrie trie;
+
+	final LiteralDafsa dafsa;
+
+	/**
+	 * the automaton of the entries, or null if it is not used
+	 */
+	final MultiPatternAutomaton automaton;
+
+	final LiteralPrefilter prefilter;
+
+	final FirstCharIndex firstCharIndex;
+
+	/**
+	 * the maximum length of the matches of each entry, by entry index
+	 */
+	final int[] maxMatchLengths;
+
+	/**
+	 * the entries of the lists using the linear-time engine that it does not
+	 * support, with the reason
+	 */
+	final Map<CompiledEntry, String> unsupportedLinearEntries;
+
+	/**
+	 * the entries whose matches have no maximum length
+	 */
+	final List<CompiledEntry> unchunkedEntries;
+
+	/**
+	 * the number of distinct lookups of the entries
+	 */
+	final int distinctLookups;
+
+	/**
+	 * Takes the structures built by the init steps of a gazetteer
+	 */
+	CompiledLists(RegexGazetteer gazetteer) {
+		entries = gazetteer.compiledEntries;
+		trie = gazetteer.literalTrie;
+		dafsa = gazetteer.literalDafsa;
+		automaton = gazetteer.automaton;
+		prefilter = gazetteer.prefilter;
+		firstCharIndex = gazetteer.firstCharIndex;
+		maxMatchLengths = gazetteer.maxMatchLengths;
+		unsupportedLinearEntries = gazetteer.unsupportedLinearEntries;
+		unchunkedEntries = gazetteer.unchunkedEntries;
+		distinctLookups = gazetteer.distinctLookups;
+	}
+
+	/**
+	 * @return the number of bytes taken by the trie, or the minimal
+	 * automaton, of the literal entries
+	 */
+	long trieFootprint() {
+		if (dafsa != null) {
+			return dafsa.footprint();
+		}
+		return trie == null ? 0 : trie.footprint();
+	}
+
+	/**
+	 * @return the number of states of the trie, or the minimal automaton, of
+	 * the literal entries
+	 */
+	int trieStates() {
+		if (dafsa != null) {
+			return dafsa.size();
+		}
+		return trie == null ? 0 : trie.size();
+	}
+}
@@ -0,0 +1,536 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The matches of all the compiled entries of a selection of the lists in the
+ * text of a document. The text is first scanned by the trie, the automaton,
+ * the prefilter and the first character index, then the matches of each
+ * entry are collected, either on the calling thread or by the tasks of a
+ * pool, the text being split into chunks matched separately if it is large.
+ * The matches of each entry only depend on the text, so they are the same
+ * whatever the number of threads and the chunks.
+ * <p>
+ * An instance is used by {@link RegexGazetteer} for a single text, and its
+ * matches are read once all of them are found.
+ */
+final class DocumentMatches {
+
+	/**
+	 * the number of entries below which a range of the table is matched
+	 * by a single task
+	 */
+	private static final int ENTRIES_PER_TASK = 16;
+
+	private final CompiledLists lists;
+
+	private final CharSequence content;
+
+	private final StepBudget budget;
+
+	private Map<CompiledEntry, List<int[]>> literalMatches;
+
+	private Candidates candidates;
+
+	private Candidates factors;
+
+	private Map<CompiledEntry, List<int[]>> indexedMatches;
+
+	/**
+	 * the offsets where the chunks start, followed by the length of the
+	 * text, or null if the text is matched whole
+	 */
+	private int[] limits;
+
+	/**
+	 * the matches found in each chunk, by chunk
+	 */
+	private List<Map<CompiledEntry, List<int[]>>> chunkMatches;
+
+	/**
+	 * the [start, end] offsets of the matches, by entry index
+	 */
+	private final List<List<int[]>> matches;
+
+	DocumentMatches(CompiledLists lists, CharSequence content, StepBudget budget) {
+		this.lists = lists;
+		this.content = content;
+		this.budget = budget;
+		matches = new ArrayList<>(Collections.<List<int[]>>nCopies(lists.entries.size(), null));
+	}
+
+	/**
+	 * @return the matches of the entry at an index of the table
+	 */
+	List<int[]> get(int index) {
+		return matches.get(index);
+	}
+
+	/**
+	 * Splits the text into chunks matched separately. A chunk limit is
+	 * never put inside a surrogate pair, where java.util.regex could not
+	 * start a match when searching the whole text.
+	 */
+	void split(int chunkSize) {
+		int length = content.length();
+		int count = (int) ((length + (long) chunkSize - 1) / chunkSize);
+		limits = new int[count + 1];
+		for (int k = 1; k < count; k++) {
+			int limit = (int) ((long) k * chunkSize);
+			if (Character.isLowSurrogate(content.charAt(limit))
+					&& Character.isHighSurrogate(content.charAt(limit - 1))) {
+				limit--;
+			}
+			limits[k] = limit;
+		}
+		limits[count] = length;
+		chunkMatches = new ArrayList<>(Collections.<Map<CompiledEntry, List<int[]>>>nCopies(count, null));
+	}
+
+	/**
+	 * Runs the scans shared by all the entries
+	 */
+	void scan() {
+		scanLiterals();
+		scanCandidates();
+		scanFactors();
+		scanFirstChars();
+	}
+
+	void scanLiterals() {
+		literalMatches = findLiterals(lists, content);
+	}
+
+	void scanCandidates() {
+		if (lists.automaton != null) {
+			candidates = lists.automaton.scan(content);
+		}
+	}
+
+	void scanFactors() {
+		factors = lists.prefilter.scan(content);
+	}
+
+	void scanFirstChars() {
+		indexedMatches = lists.firstCharIndex.match(content, budget);
+	}
+
+	/**
+	 * Collects the matches of a range of the table, once the text has been
+	 * scanned. The ranges matched concurrently must not overlap.
+	 */
+	void matchEntries(int from, int to) {
+		for (int i = from; i < to; i++) {
+			CompiledEntry entry = lists.entries.get(i);
+			try {
+				matches.set(i, limits != null && isChunked(i) ? stitch(i) : match(i));
+			} catch (StepBudget.ExceededException ex) {
+				budget.exceeded(entry, ex);
+			}
+		}
+	}
+
+	/**
+	 * Finds the matches starting in a chunk of the entries that are matched
+	 * by chunks, once the automaton and the prefilter have scanned the text.
+	 * The search of each entry starts at the start of the chunk; for the
+	 * literal entries, all the occurrences are kept.
+	 */
+	void matchChunk(int k) {
+		int from = limits[k];
+		int to = limits[k + 1];
+		Map<CompiledEntry, List<int[]>> found = findLiterals(lists, content, from, to);
+		found.putAll(lists.firstCharIndex.match(content, from, to, budget));
+		for (int i = 0; i < lists.entries.size(); i++) {
+			CompiledEntry entry = lists.entries.get(i);
+			if (entry.isLiteral() || lists.firstCharIndex.handles(entry) || !isChunked(i)) {
+				continue;
+			}
+			try {
+				List<int[]> result = matchChunk(i, from, to);
+				if (!result.isEmpty()) {
+					found.put(entry, result);
+				}
+			} catch (StepBudget.ExceededException ex) {
+				budget.exceeded(entry, ex);
+			}
+		}
+		chunkMatches.set(k, found);
+	}
+
+	private List<int[]> matchChunk(int index, int from, int to) {
+		CompiledEntry entry = lists.entries.get(index);
+		CharSequence text = budget.text(content);
+		List<int[]> result = new ArrayList<>();
+		if (lists.automaton != null && lists.automaton.handles(index)) {
+			EntryMatcher matcher = lists.automaton.matcher(index, text, candidates, from, to);
+			while (matcher.find() && matcher.start() < to) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		} else if (lists.prefilter.handles(entry)) {
+			EntryMatcher matcher = lists.prefilter.matcher(entry, text, factors, from, to);
+			while (matcher.find() && matcher.start() < to) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		} else {
+			RegexMatcher matcher = entry.getRegex().matcher(text);
+			matcher.region(from, regionEnd(index, to));
+			while (matcher.find() && matcher.start() < to) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Joins the matches of an entry found in each chunk. The search of a
+	 * chunk starts at its start, while the search of the whole text starts
+	 * after the last match of the previous chunks, which may end inside
+	 * the chunk. In that case the matches of the chunk overlapping the last
+	 * match are dropped, and if the search of the chunk went past the end
+	 * of the last match, the pattern searches the chunk again from there
+	 * until both searches find the same match.
+	 */
+	private List<int[]> stitch(int index) {
+		CompiledEntry entry = lists.entries.get(index);
+		List<int[]> result = new ArrayList<>();
+		// where the search of the whole text is
+		int position = 0;
+		RegexMatcher matcher = null;
+		for (int k = 0; k < chunkMatches.size(); k++) {
+			List<int[]> found = chunkMatches.get(k).get(entry);
+			if (found == null) {
+				continue;
+			}
+			if (entry.isLiteral()) {
+				// all the occurrences are known
+				for (int[] occurrence : found) {
+					if (occurrence[0] >= position) {
+						result.add(occurrence);
+						position = occurrence[1];
+					}
+				}
+				continue;
+			}
+			int next = 0;
+			// where the search of the chunk is
+			int chunkPosition = limits[k];
+			while (next < found.size() && found.get(next)[0] < position) {
+				chunkPosition = found.get(next++)[1];
+			}
+			if (chunkPosition > position) {
+				if (matcher == null) {
+					matcher = entry.getRegex().matcher(budget.text(content));
+				}
+				matcher.region(position, regionEnd(index, limits[k + 1]));
+				boolean met = false;
+				while (!met && matcher.find() && matcher.start() < limits[k + 1]) {
+					while (next < found.size() && found.get(next)[0] < matcher.start()) {
+						next++;
+					}
+					// the matches starting at the same offset are the same
+					met = next < found.size() && found.get(next)[0] == matcher.start();
+					if (!met) {
+						result.add(new int[]{matcher.start(), matcher.end()});
+						position = matcher.end();
+					}
+				}
+				if (!met) {
+					// no other match in the chunk
+					continue;
+				}
+			}
+			for (; next < found.size(); next++) {
+				result.add(found.get(next));
+				position = found.get(next)[1];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if the matches of an entry are searched by chunks when
+	 * the text is split
+	 */
+	private boolean isChunked(int index) {
+		CompiledEntry entry = lists.entries.get(index);
+		return entry.isLiteral() || lists.firstCharIndex.handles(entry)
+				|| lists.maxMatchLengths[index] != RegexParser.UNBOUNDED;
+	}
+
+	/**
+	 * @return the end of the region to search for the matches of an entry
+	 * starting before an offset
+	 */
+	private int regionEnd(int index, int to) {
+		int maxLength = lists.maxMatchLengths[index];
+		if (maxLength == RegexParser.UNBOUNDED) {
+			return content.length();
+		}
+		return (int) Math.min(content.length(), (long) to + maxLength);
+	}
+
+	private List<int[]> match(int index) {
+		CompiledEntry entry = lists.entries.get(index);
+		if (entry.isLiteral()) {
+			return literalMatches.get(entry);
+		}
+		if (lists.firstCharIndex.handles(entry)) {
+			return indexedMatches.get(entry);
+		}
+		CharSequence text = budget.text(content);
+		List<int[]> result = new ArrayList<>();
+		if (lists.automaton != null && lists.automaton.handles(index)) {
+			EntryMatcher matcher = lists.automaton.matcher(index, text, candidates);
+			while (matcher.find()) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		} else if (lists.prefilter.handles(entry)) {
+			EntryMatcher matcher = lists.prefilter.matcher(entry, text, factors);
+			while (matcher.find()) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		} else {
+			RegexMatcher matcher = entry.getRegex().matcher(text);
+			while (matcher.find()) {
+				result.add(new int[]{matcher.start(), matcher.end()});
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the matches of the literal entries in a single pass over the text,
+	 * following the failure links of the trie. As with the patterns, the
+	 * matches of an entry do not overlap, each one being the longest starting
+	 * at its offset.
+	 *
+	 * @return the [start, end] offsets of the matches of each literal entry
+	 * found in the text
+	 */
+	private static Map<CompiledEntry, List<int[]>> findLiterals(CompiledLists lists,
+			CharSequence content) {
+		Map<CompiledEntry, List<int[]>> matches = findLiterals(lists, content, 0, content.length());
+		for (Map.Entry<CompiledEntry, List<int[]>> e : matches.entrySet()) {
+			e.setValue(nonOverlapping(e.getValue(), 0));
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds all the occurrences of the literal entries starting in a range of
+	 * the text, overlapping or not. The text is read from the start of the
+	 * range, and after its end as long as the current state may belong to an
+	 * occurrence starting in the range.
+	 *
+	 * @return the [start, end] offsets of the occurrences of each literal
+	 * entry, in increasing order
+	 */
+	private static Map<CompiledEntry, List<int[]>> findLiterals(CompiledLists lists,
+			CharSequence content, int from, int to) {
+		if (lists.dafsa != null) {
+			return findMinimizedLiterals(lists, content, from, to);
+		}
+		Map<CompiledEntry, List<int[]>> matches = new HashMap<>();
+		WordBoundaries boundaries = new WordBoundaries(content);
+		LiteralTrie trie = lists.trie;
+		int state = LiteralTrie.INITIAL_STATE;
+		int length = content.length();
+		int i = from;
+		while (i < length) {
+			if (i >= to && (state == LiteralTrie.INITIAL_STATE
+					|| startOf(content, i, trie.depth(state)) >= to)) {
+				// nothing read so far can start in the range
+				break;
+			}
+			char c = content.charAt(i++);
+			if (RegexGazetteer.isSpace(c)) {
+				// the whole sequence of whitespace is read as one space
+				c = ' ';
+				while (i < length && RegexGazetteer.isSpace(content.charAt(i))) {
+					i++;
+				}
+			}
+			while (state != LiteralTrie.INITIAL_STATE && trie.next(state, c) == LiteralTrie.NO_STATE) {
+				state = trie.failure(state);
+			}
+			state = trie.next(state, c);
+			if (state == LiteralTrie.NO_STATE) {
+				state = LiteralTrie.INITIAL_STATE;
+				continue;
+			}
+			int matched = trie.isFinal(state) ? state : trie.output(state);
+			for (; matched != LiteralTrie.NO_STATE; matched = trie.output(matched)) {
+				int start = startOf(content, i, trie.depth(matched));
+				if (start < from || start >= to) {
+					// an occurrence found by the scan of another range
+					continue;
+				}
+				for (int k = trie.entriesStart(matched); k < trie.entriesEnd(matched); k++) {
+					addLiteralMatch(matches, boundaries, lists.entries.get(trie.entry(k)), start, i);
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds all the occurrences of the literal entries starting in a range of
+	 * the text with their minimal automaton, which is read from each offset of
+	 * the range that does not follow whitespace in a sequence of it
+	 *
+	 * @return the [start, end] offsets of the occurrences of each literal
+	 * entry, in increasing order
+	 */
+	private static Map<CompiledEntry, List<int[]>> findMinimizedLiterals(CompiledLists lists,
+			CharSequence content, int from, int to) {
+		Map<CompiledEntry, List<int[]>> matches = new HashMap<>();
+		WordBoundaries boundaries = new WordBoundaries(content);
+		LiteralDafsa dafsa = lists.dafsa;
+		int length = content.length();
+		for (int start = from; start < to && start < length; start++) {
+			if (start > 0 && RegexGazetteer.isSpace(content.charAt(start))
+					&& RegexGazetteer.isSpace(content.charAt(start - 1))) {
+				// the occurrences start with the whole sequence
+				continue;
+			}
+			int state = dafsa.initialState();
+			int phrase = 0;
+			int i = start;
+			while (i < length) {
+				char c = content.charAt(i++);
+				if (RegexGazetteer.isSpace(c)) {
+					c = ' ';
+					while (i < length && RegexGazetteer.isSpace(content.charAt(i))) {
+						i++;
+					}
+				}
+				int edge = dafsa.edge(state, c);
+				if (edge < 0) {
+					break;
+				}
+				phrase += dafsa.rank(edge);
+				state = dafsa.target(edge);
+				if (dafsa.isFinal(state)) {
+					for (int k = dafsa.entriesStart(phrase); k < dafsa.entriesEnd(phrase); k++) {
+						addLiteralMatch(matches, boundaries, lists.entries.get(dafsa.entry(k)), start, i);
+					}
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Adds an occurrence of a literal entry to the ones found, if it is at
+	 * the word boundaries required by the entry
+	 */
+	private static void addLiteralMatch(Map<CompiledEntry, List<int[]>> matches,
+			WordBoundaries boundaries, CompiledEntry entry, int start, int end) {
+		if ((entry.hasBoundaryStart() && !boundaries.isBoundary(start))
+				|| (entry.hasBoundaryEnd() && !boundaries.isBoundary(end))) {
+			return;
+		}
+		List<int[]> entryMatches = matches.get(entry);
+		if (entryMatches == null) {
+			entryMatches = new ArrayList<>();
+			matches.put(entry, entryMatches);
+		}
+		entryMatches.add(new int[]{start, end});
+	}
+
+	/**
+	 * Keeps the occurrences of a literal entry that do not overlap the
+	 * previous ones, in the order of the text
+	 *
+	 * @param occurrences the occurrences in increasing order
+	 * @param from the offset before which no occurrence can be kept
+	 */
+	private static List<int[]> nonOverlapping(List<int[]> occurrences, int from) {
+		List<int[]> result = new ArrayList<>();
+		for (int[] occurrence : occurrences) {
+			if (occurrence[0] >= from) {
+				result.add(occurrence);
+				from = occurrence[1];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the offset of the text reached by going back a number of trie
+	 * transitions from an offset
+	 */
+	private static int startOf(CharSequence content, int end, int depth) {
+		int start = end;
+		for (int k = 0; k < depth; k++) {
+			start--;
+			if (RegexGazetteer.isSpace(content.charAt(start))) {
+				while (start > 0 && RegexGazetteer.isSpace(content.charAt(start - 1))) {
+					start--;
+				}
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Runs the four scans concurrently, or the scans of the automaton and
+	 * the prefilter followed by the matching of each chunk if the text is
+	 * split, then matches the table split in ranges of consecutive entries
+	 */
+	final class ParallelMatch extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void compute() {
+			if (limits == null) {
+				invokeAll(ForkJoinTask.adapt(() -> scanLiterals()),
+						ForkJoinTask.adapt(() -> scanCandidates()),
+						ForkJoinTask.adapt(() -> scanFactors()),
+						ForkJoinTask.adapt(() -> scanFirstChars()));
+			} else {
+				invokeAll(ForkJoinTask.adapt(() -> scanCandidates()),
+						ForkJoinTask.adapt(() -> scanFactors()));
+				List<ForkJoinTask<?>> chunks = new ArrayList<>();
+				for (int k = 0; k < chunkMatches.size(); k++) {
+					final int chunk = k;
+					chunks.add(ForkJoinTask.adapt(() -> matchChunk(chunk)));
+				}
+				invokeAll(chunks);
+			}
+			new MatchRange(0, lists.entries.size()).invoke();
+		}
+	}
+
+	final class MatchRange extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+
+		private final int to;
+
+		MatchRange(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= ENTRIES_PER_TASK) {
+				matchEntries(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new MatchRange(from, middle), new MatchRange(middle, to));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package regexgaz;
+
+/**
+ * Counts the documents for which an entry was abandoned because its searches
+ * exceeded the step budget of the gazetteer, and the steps they spent, see
+ * {@link RegexGazetteer#getAbandonedEntries()}.
+ */
+public final class EntryCost {
+
+	private long documents;
+
+	private long steps;
+
+	EntryCost() {
+	}
+
+	EntryCost(EntryCost cost) {
+		documents = cost.documents;
+		steps = cost.steps;
+	}
+
+	void add(long documentSteps) {
+		documents++;
+		steps += documentSteps;
+	}
+
+	/**
+	 * @return the number of documents for which the entry was abandoned
+	 */
+	public long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * @return the number of chars read by the searches of the entry before
+	 * they were abandoned, summed over the documents
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	@Override
+	public String toString() {
+		return documents + " documents, " + steps + " steps";
+	}
+}
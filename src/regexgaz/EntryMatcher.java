@@ -0,0 +1,124 @@
+package regexgaz;
+
+import java.util.regex.Matcher;
+
+/**
+ * Finds the matches of one entry, running its pattern only around candidate
+ * offsets. The candidates must be such that every match [start, end) of the
+ * entry contains one of them in ]start, end], e.g. the offsets where a match
+ * may end, or the end offsets of a literal that every match contains. The
+ * matches found are then the same, in the same order, as the ones found by
+ * successive calls to {@link Matcher#find()} on the whole text.
+ */
+final class EntryMatcher {
+
+	private final CharSequence text;
+
+	private final RegexMatcher matcher;
+
+	private final int length;
+
+	private final int maxLength;
+
+	private final int[] candidates;
+
+	private int next;
+
+	/**
+	 * the offset before which no more matches can start
+	 */
+	private int from;
+
+	private int matchStart;
+
+	private int matchEnd;
+
+	/**
+	 * @param regex the pattern of the entry
+	 * @param text the text
+	 * @param maxLength the maximum length of the matches of the entry, or
+	 * {@link RegexParser#UNBOUNDED}
+	 * @param candidates the sorted candidate offsets
+	 */
+	EntryMatcher(EntryRegex regex, CharSequence text, int maxLength, int[] candidates) {
+		this(regex, text, maxLength, candidates, 0);
+	}
+
+	/**
+	 * Searches the matches starting at or after an offset, as
+	 * {@link Matcher#find(int)} and the following calls to
+	 * {@link Matcher#find()} would.
+	 *
+	 * @param from the offset where the search starts
+	 */
+	EntryMatcher(EntryRegex regex, CharSequence text, int maxLength, int[] candidates, int from) {
+		this.from = from;
+		this.text = text;
+		// the window limits do not change the meaning of \b, ^ and $
+		this.matcher = regex.matcher(text);
+		this.length = text.length();
+		this.maxLength = maxLength;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Finds the next match, see {@link Matcher#find()}
+	 */
+	boolean find() {
+		while (next < candidates.length) {
+			int candidate = candidates[next];
+			if (candidate <= from) {
+				next++;
+				continue;
+			}
+			if (maxLength == RegexParser.UNBOUNDED) {
+				// no window, the pattern has to search the rest of the text
+				if (!matcher.region(from, length).find()) {
+					next = candidates.length;
+					return false;
+				}
+			} else {
+				// a match starting before candidate - maxLength would end
+				// before the candidate, and a match starting before the
+				// candidate ends in the window
+				matcher.region(regionStart(text, Math.max(from, candidate - maxLength), from),
+						(int) Math.min(length, (long) candidate + maxLength));
+				if (!matcher.find() || matcher.start() >= candidate) {
+					from = candidate;
+					next++;
+					continue;
+				}
+			}
+			matchStart = matcher.start();
+			matchEnd = matcher.end();
+			from = matchEnd;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the region start to use to search for the matches starting at
+	 * an offset. java.util.regex may not start a match inside a surrogate
+	 * pair, except at the start of the region, so for such an offset the
+	 * region starts one char before, where no match can start.
+	 *
+	 * @param offset the first offset where a match can start
+	 * @param from the offset before which the matches are not wanted
+	 */
+	static int regionStart(CharSequence text, int offset, int from) {
+		if (offset > from && Character.isLowSurrogate(text.charAt(offset))
+				&& Character.isHighSurrogate(text.charAt(offset - 1))) {
+			return offset - 1;
+		}
+		return offset;
+	}
+
+	int start() {
+		return matchStart;
+	}
+
+	int end() {
+		return matchEnd;
+	}
+}
@@ -0,0 +1,18 @@
+package regexgaz;
+
+/**
+ * The regular expression of an entry compiled by one of the engines the
+ * entries can be matched with: java.util.regex, see {@link JavaRegex}, or
+ * the linear-time engine, see {@link LinearRegex}. The engine is chosen per
+ * list in the lists definition, or for all the lists with the regexEngine
+ * parameter of the gazetteer.
+ * <p>
+ * Instances are immutable, so they can be shared by several threads.
+ */
+interface EntryRegex {
+
+	/**
+	 * @return a matcher searching the whole text
+	 */
+	RegexMatcher matcher(CharSequence text);
+}
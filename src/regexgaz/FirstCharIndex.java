@@ -0,0 +1,267 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+/**
+ * Indexes regular expression entries by the characters their matches can
+ * start with. A text is walked once, and at each offset the pattern of an
+ * entry is only tried, with {@link Matcher#lookingAt()}, if the character
+ * at the offset can start one of its matches. The zero-width assertions
+ * such as the \b added around the entries starting with a letter do not
+ * change the set of first characters: they are checked by the pattern
+ * itself, which sees the whole text.
+ * <p>
+ * Instances are immutable once built, so they can be shared by several
+ * gazetteers.
+ */
+final class FirstCharIndex {
+
+	private static final int[] NO_ENTRIES = new int[0];
+
+	private final List<CompiledEntry> entries = new ArrayList<>();
+
+	private final Map<CompiledEntry, Integer> ids = new HashMap<>();
+
+	/**
+	 * the sets of the first characters of the entries, by id
+	 */
+	private final List<CharSet> firstSets = new ArrayList<>();
+
+	/**
+	 * the ids of the entries that can start with each Latin-1 character
+	 */
+	private final int[][] latin1 = new int[256][];
+
+	/**
+	 * the ids of the entries that can start with the other characters, for
+	 * the first sets that can be enumerated
+	 */
+	private final Map<Integer, int[]> byCodePoint = new HashMap<>();
+
+	/**
+	 * the ids of the entries whose first set is too large to be enumerated
+	 */
+	private final int[] others;
+
+	/**
+	 * Builds the index of a set of entries. The entries that can match the
+	 * empty string, or whose pattern cannot be analysed, are left out, see
+	 * {@link #handles(CompiledEntry)}.
+	 */
+	FirstCharIndex(List<CompiledEntry> candidates) {
+		Map<Integer, List<Integer>> indexed = new HashMap<>();
+		List<Integer> large = new ArrayList<>();
+		for (CompiledEntry entry : candidates) {
+			RegexParser.Node tree = entry.getTree();
+			if (tree == null) {
+				continue;
+			}
+			if (tree.minLength() == 0) {
+				continue;
+			}
+			int id = entries.size();
+			CharSet first = firstSet(tree);
+			entries.add(entry);
+			ids.put(entry, id);
+			firstSets.add(first);
+			int[] codePoints = first.enumerate();
+			if (codePoints == null) {
+				large.add(id);
+				continue;
+			}
+			for (int cp : codePoints) {
+				List<Integer> cpIds = indexed.get(cp);
+				if (cpIds == null) {
+					cpIds = new ArrayList<>();
+					indexed.put(cp, cpIds);
+				}
+				cpIds.add(id);
+			}
+		}
+		for (Map.Entry<Integer, List<Integer>> e : indexed.entrySet()) {
+			byCodePoint.put(e.getKey(), toArray(e.getValue()));
+		}
+		others = toArray(large);
+		for (int c = 0; c < latin1.length; c++) {
+			latin1[c] = lookup(c);
+		}
+	}
+
+	/**
+	 * @return true if the matches of the entry are found by {@link #match}
+	 */
+	boolean handles(CompiledEntry entry) {
+		return ids.containsKey(entry);
+	}
+
+	/**
+	 * @return the number of indexed entries
+	 */
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Finds the matches of all the indexed entries in a text. The matches of
+	 * each entry are the same, in the same order, as the ones found by
+	 * successive calls to {@link Matcher#find()}.
+	 *
+	 * @param budget the budget of the searches of each entry; the entries
+	 * exceeding it are abandoned
+	 * @return the [start, end] offsets of the matches of each entry found in
+	 * the text
+	 */
+	Map<CompiledEntry, List<int[]>> match(CharSequence text, StepBudget budget) {
+		return match(text, 0, text.length(), budget);
+	}
+
+	/**
+	 * Finds the matches of all the indexed entries starting in a range of a
+	 * text, as {@link Matcher#find(int)} from the start of the range and the
+	 * following calls to {@link Matcher#find()} would.
+	 *
+	 * @param from the start of the range
+	 * @param to the end of the range
+	 * @param budget the budget of the searches of each entry; the entries
+	 * exceeding it are abandoned
+	 * @return the [start, end] offsets of the matches of each entry found in
+	 * the range
+	 */
+	Map<CompiledEntry, List<int[]>> match(CharSequence text, int from, int to, StepBudget budget) {
+		Map<CompiledEntry, List<int[]>> matches = new HashMap<>();
+		if (entries.isEmpty()) {
+			return matches;
+		}
+		Matcher[] matchers = new Matcher[entries.size()];
+		// the offset before which no more matches can start, by entry
+		int[] next = new int[entries.size()];
+		Arrays.fill(next, from);
+		Map<Integer, int[]> nonLatin1 = new HashMap<>();
+		int length = text.length();
+		for (int i = from; i < to; i++) {
+			int cp = Character.codePointAt(text, i);
+			int[] candidates;
+			if (cp < latin1.length) {
+				candidates = latin1[cp];
+			} else {
+				candidates = nonLatin1.get(cp);
+				if (candidates == null) {
+					candidates = lookup(cp);
+					nonLatin1.put(cp, candidates);
+				}
+			}
+			for (int id : candidates) {
+				if (i < next[id]) {
+					continue;
+				}
+				Matcher matcher = matchers[id];
+				if (matcher == null) {
+					matcher = entries.get(id).getPattern().matcher(budget.text(text));
+					// \b, ^ and $ must see the whole text
+					matcher.useTransparentBounds(true);
+					matcher.useAnchoringBounds(false);
+					matchers[id] = matcher;
+				}
+				try {
+					int regionStart = EntryMatcher.regionStart(text, i, next[id]);
+					matcher.region(regionStart, length);
+					if (regionStart < i) {
+						// inside a surrogate pair, let java.util.regex decide
+						// where its next match starts
+						if (!matcher.find() || matcher.start() >= to) {
+							next[id] = length;
+							continue;
+						}
+					} else if (!matcher.lookingAt()) {
+						continue;
+					}
+				} catch (StepBudget.ExceededException ex) {
+					budget.exceeded(entries.get(id), ex);
+					matches.remove(entries.get(id));
+					next[id] = length;
+					continue;
+				}
+				next[id] = matcher.end();
+				CompiledEntry entry = entries.get(id);
+				List<int[]> entryMatches = matches.get(entry);
+				if (entryMatches == null) {
+					entryMatches = new ArrayList<>();
+					matches.put(entry, entryMatches);
+				}
+				entryMatches.add(new int[]{matcher.start(), matcher.end()});
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * @return the ids of the entries that can start with a code point, in
+	 * increasing order
+	 */
+	private int[] lookup(int cp) {
+		int[] indexed = byCodePoint.get(cp);
+		List<Integer> result = new ArrayList<>();
+		int k = 0;
+		for (int id : others) {
+			while (indexed != null && k < indexed.length && indexed[k] < id) {
+				result.add(indexed[k++]);
+			}
+			if (firstSets.get(id).contains(cp)) {
+				result.add(id);
+			}
+		}
+		while (indexed != null && k < indexed.length) {
+			result.add(indexed[k++]);
+		}
+		return result.isEmpty() ? NO_ENTRIES : toArray(result);
+	}
+
+	/**
+	 * Computes the set of the characters the matches of a node can start
+	 * with. The node must not match the empty string.
+	 */
+	static CharSet firstSet(RegexParser.Node node) {
+		if (node instanceof RegexParser.Atom) {
+			return ((RegexParser.Atom) node).set;
+		}
+		if (node instanceof RegexParser.Sequence) {
+			CharSet first = null;
+			for (RegexParser.Node item : ((RegexParser.Sequence) node).items) {
+				if (item.maxLength() == 0) {
+					// only assertions, nothing to start with
+					continue;
+				}
+				first = first == null ? firstSet(item) : CharSet.union(first, firstSet(item));
+				if (item.minLength() > 0) {
+					break;
+				}
+			}
+			return first;
+		}
+		if (node instanceof RegexParser.Alternation) {
+			CharSet first = null;
+			for (RegexParser.Node alternative : ((RegexParser.Alternation) node).alternatives) {
+				if (alternative.maxLength() == 0) {
+					// only assertions, nothing to start with
+					continue;
+				}
+				first = first == null ? firstSet(alternative) : CharSet.union(first, firstSet(alternative));
+			}
+			return first;
+		}
+		return firstSet(((RegexParser.Repeat) node).node);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+}
@@ -17,6 +17,9 @@ package regexgaz;
  */
 import gate.event.GateEvent;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Gazetteer Event to be used whenever an event needs to be fired and spread
  * among Gazetteer Listeners
@@ -27,6 +30,20 @@ public class GazetteerEvent extends GateEvent {
 
 	public static final int REINIT = 1;
 
+	/**
+	 * Some lists changed and were reloaded, see {@link #getLists()}
+	 */
+	public static final int RELOAD = 2;
+
+	/**
+	 * the lists reloaded, or an empty list
+	 */
+	private final List<LinearNode> lists;
+
+	private final int version;
+
+	private final long nanos;
+
 	/**
 	 * Creates a gazetteer event
 	 *
@@ -34,7 +51,47 @@ public class GazetteerEvent extends GateEvent {
 	 * @param type the type of the event
 	 */
 	public GazetteerEvent(Object source, int type) {
+		this(source, type, Collections.<LinearNode>emptyList(), 0, 0);
+	}
+
+	/**
+	 * Creates a gazetteer event reporting a reload of some lists
+	 *
+	 * @param source the Object that generated the event
+	 * @param type the type of the event
+	 * @param lists the lists reloaded
+	 * @param version the number of the version of the lists made by the
+	 * reload
+	 * @param nanos the time taken by the reload, in nanoseconds
+	 */
+	public GazetteerEvent(Object source, int type, List<LinearNode> lists, int version, long nanos) {
 		super(source, type);
+		this.lists = Collections.unmodifiableList(lists);
+		this.version = version;
+		this.nanos = nanos;
+	}
+
+	/**
+	 * @return the lists reloaded, in the order of the definition
+	 */
+	public List<LinearNode> getLists() {
+		return lists;
+	}
+
+	/**
+	 * @return the number of the version of the lists made by the reload: 1
+	 * for the first reload after init(), then 2...
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the time taken to reload the lists and compile them, until the
+	 * new version replaced the previous one
+	 */
+	public long getTimeMillis() {
+		return nanos / 1000000;
 	}
 
 }
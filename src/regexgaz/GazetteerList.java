@@ -21,12 +21,14 @@ import gate.creole.AbstractLanguageResource;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
-import java.util.regex.Pattern;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 
 import org.apache.commons.io.IOUtils;
 
 import gate.creole.ResourceInstantiationException;
-import gate.util.BomStrippingInputStreamReader;
 import gate.util.Files;
 import gate.util.GateRuntimeException;
 import gate.util.LuckyException;
@@ -170,50 +172,51 @@ public class GazetteerList extends AbstractLanguageResource
 	}
 
 	/**
-	 * Loads a gazetteer list
+	 * Loads a gazetteer list. The list is read and decoded by large blocks,
+	 * from the file itself for a file: URL, and its lines are parsed in
+	 * place, see {@link ListReader}.
 	 *
 	 * @param isOrdered true if the feature maps used should be ordered
 	 * @throws ResourceInstantiationException when the resource cannot be
 	 * created
 	 */
-	@SuppressWarnings("resource")
 	public void load(boolean isOrdered) throws ResourceInstantiationException {
-		BufferedReader listReader = null;
+		ReadableByteChannel channel = null;
 
 		try {
 			if (null == url) {
 				throw new ResourceInstantiationException("URL not specified (null).");
 			}
 
-			listReader
-					= new BomStrippingInputStreamReader((url).openStream(), encoding);
-			String line;
-			int linenr = 0;
-			Pattern emptyPattern = Pattern.compile("\\s*");
-			while (null != (line = listReader.readLine())) {
-				linenr++;
-				if (emptyPattern.matcher(line).matches()) {
-					// skip empty line
-					continue;
-				}
+			if ("file".equals(url.getProtocol())) {
+				channel = FileChannel.open(Files.fileFromURL(url).toPath());
+			} else {
+				channel = Channels.newChannel(url.openStream());
+			}
+			String listSeparator = separator == null || separator.isEmpty() ? null : separator;
+			ListReader listReader = new ListReader(channel, Charset.forName(encoding),
+					listSeparator != null && listSeparator.length() == 1 ? listSeparator.charAt(0) : -1);
+			while (listReader.next()) {
 				GazetteerNode node = null;
 				try {
-					node = new GazetteerNode(line, separator, isOrdered);
+					node = GazetteerNode.parse(listReader.chars(), listReader.lineStart(),
+							listReader.lineEnd(), listReader.separatorIndex(), listSeparator, isOrdered);
 				} catch (Exception ex) {
 					throw new GateRuntimeException("Could not read gazetteer entry "
-							+ linenr + " from URL " + getURL() + ": " + ex.getMessage(),
+							+ listReader.lineNumber() + " from URL " + getURL() + ": " + ex.getMessage(),
 							ex);
 				}
 
 				entries.add(node);
 			} // while
 
-			listReader.close();
-		} catch (ResourceInstantiationException | IOException | GateRuntimeException x) {
+			channel.close();
+		} catch (ResourceInstantiationException | IOException | IllegalArgumentException
+				| GateRuntimeException x) {
 			throw new ResourceInstantiationException(x.getClass() + ":"
 					+ x.getMessage(), x);
 		} finally {
-			IOUtils.closeQuietly(listReader);
+			IOUtils.closeQuietly(channel);
 		}
 		isModified = false;
 	}
@@ -99,6 +99,102 @@ public class GazetteerNode {
 		}
 	}
 
+	GazetteerNode(String entry, Map<String, Object> featureMap, String separator) {
+		this.entry = entry;
+		this.featureMap = featureMap;
+		this.separator = separator;
+	}
+
+	/**
+	 * Parses a gazetteer node from a line of a list read by a
+	 * {@link ListReader}, as {@link #GazetteerNode(String, String, boolean)}
+	 * would parse the line, but without the intermediate strings when the
+	 * separator is a single char.
+	 *
+	 * @param chars the array holding the line
+	 * @param start the start of the line in the array
+	 * @param end the end of the line in the array
+	 * @param separatorIndex the index of the first occurrence of the
+	 * separator in the line if it is a single char, or -1
+	 * @param separator the separator used in the line to delimit each
+	 * name-value pair of features, or null
+	 * @param isOrdered true if the feature maps used should be ordered
+	 */
+	static GazetteerNode parse(char[] chars, int start, int end, int separatorIndex,
+			String separator, boolean isOrdered) {
+		if (separator != null && separator.length() == 0) {
+			separator = null;
+		}
+		if (separator == null || separatorIndex < 0) {
+			String line = new String(chars, start, end - start);
+			if (separator == null || separator.length() == 1) {
+				// no features
+				return new GazetteerNode(line, null, separator);
+			}
+			return new GazetteerNode(line, separator, isOrdered);
+		}
+		String entry = new String(chars, start, separatorIndex - start);
+		char sep = separator.charAt(0);
+		// the pairs are delimited by the separators, the last one only
+		// counting if it is not empty
+		int pairs = 0;
+		int pairStart = separatorIndex + 1;
+		for (int i = pairStart; i < end; i++) {
+			if (chars[i] == sep) {
+				pairs++;
+				pairStart = i + 1;
+			}
+		}
+		if (pairStart < end) {
+			pairs++;
+		}
+		if (pairs == 0) {
+			return new GazetteerNode(entry, null, separator);
+		}
+		Map<String, Object> featureMap;
+		if (isOrdered) {
+			featureMap = new LinkedHashMap<String, Object>(pairs);
+		} else {
+			featureMap = new HashMap<>(pairs);
+		}
+		pairStart = separatorIndex + 1;
+		for (int k = 0; k < pairs; k++) {
+			int pairEnd = pairStart;
+			while (pairEnd < end && chars[pairEnd] != sep) {
+				pairEnd++;
+			}
+			int equals = pairStart;
+			while (equals < pairEnd && chars[equals] != '=') {
+				equals++;
+			}
+			if (equals == pairEnd) {
+				throw new GateRuntimeException("Correct format for gazetteer entry"
+						+ " features is: [entry]([separator][featureName]=[featureValue])*");
+			}
+			String name = trimmed(chars, pairStart, equals);
+			String value = trimmed(chars, equals + 1, pairEnd);
+			if (name != null && value != null) {
+				featureMap.put(name, value);
+			}
+			pairStart = pairEnd + 1;
+		}
+		return new GazetteerNode(entry, featureMap.isEmpty() ? null : featureMap, separator);
+	}
+
+	/**
+	 * @return the chars of a range without the leading and trailing ones
+	 * removed by {@link String#trim()}, or null if there are none left
+	 */
+	private static String trimmed(char[] chars, int start, int end) {
+		while (start < end && chars[start] <= ' ') {
+			start++;
+		}
+		while (end > start && chars[end - 1] <= ' ') {
+			end--;
+		}
+		return start == end ? null : new String(chars, start, end - start);
+	}
+
 	/**
 	 * Given a string of name-value pairs in the format "name=value", separated
 	 * by whatever this GazetteerNode's separator has been set to, convert it to
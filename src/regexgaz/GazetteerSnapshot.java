@@ -0,0 +1,564 @@
+package regexgaz;
+
+import gate.util.Files;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A binary snapshot of an initialised gazetteer: the nodes of its definition,
+ * the entries of each list with their features, and the transitions of the
+ * trie of its literal entries with the final state of each of them, from
+ * which a gazetteer is initialised without reading and parsing the lists or
+ * building the trie again (see {@link RegexGazetteer#setSnapshotURL(URL)}). The compiled
+ * entries and the structures built from them are not part of it: they hold
+ * compiled patterns, and are built as when the lists are read.
+ * <p>
+ * A snapshot records the size, the last modification time and the CRC-32 of
+ * the definition and of each list it was taken from, and is stale as soon as
+ * one of them changes, as is a snapshot taken from another definition, with
+ * another separator or written by another version of this class.
+ * <p>
+ * The snapshot is a header followed by the transitions of the trie, then by
+ * the nodes and their entries. The numbers are written as variable-length
+ * integers, the entries in UTF-8, and the other strings in UTF-8 the first
+ * time they occur and by their index afterwards. The values of the features
+ * are strings or null, as read from the lists: a gazetteer whose features
+ * were given other values is not written.
+ */
+final class GazetteerSnapshot {
+
+	/**
+	 * "RGZS"
+	 */
+	private static final int MAGIC = 0x52475A53;
+
+	/**
+	 * the version of the format, to be changed with it. The snapshots of
+	 * version 2 hold "null" for the features without value.
+	 */
+	static final int VERSION = 3;
+
+	/**
+	 * the definition read, which maps its nodes to their lists
+	 */
+	final LinearDefinition definition;
+
+	/**
+	 * the transitions of the trie, or null if the trie the snapshot was taken
+	 * from did not have all the literal entries of the lists
+	 */
+	final LiteralTrie.Transitions trie;
+
+	/**
+	 * the final state of each entry of the lists in the trie, by node, or
+	 * NO_STATE for the regular expressions, or null if the trie is
+	 */
+	final Map<LinearNode, int[]> finalStates;
+
+	private GazetteerSnapshot(LinearDefinition definition, LiteralTrie.Transitions trie,
+			Map<LinearNode, int[]> finalStates) {
+		this.definition = definition;
+		this.trie = trie;
+		this.finalStates = finalStates;
+	}
+
+	/**
+	 * A snapshot that cannot be used, as one of its sources changed
+	 */
+	static final class StaleSnapshotException extends Exception {
+
+		private static final long serialVersionUID = 2718265437162893617L;
+
+		StaleSnapshotException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * The state of a file a snapshot is taken from
+	 */
+	static final class Source {
+
+		final String url;
+
+		final long length;
+
+		final long lastModified;
+
+		final long checksum;
+
+		Source(String url, long length, long lastModified, long checksum) {
+			this.url = url;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.checksum = checksum;
+		}
+
+		/**
+		 * Reads the current state of a file
+		 */
+		static Source of(URL url) throws IOException {
+			long length;
+			long lastModified;
+			InputStream in;
+			if ("file".equals(url.getProtocol())) {
+				File file = Files.fileFromURL(url);
+				length = file.length();
+				lastModified = file.lastModified();
+				in = java.nio.file.Files.newInputStream(file.toPath());
+			} else {
+				URLConnection connection = url.openConnection();
+				length = connection.getContentLengthLong();
+				lastModified = connection.getLastModified();
+				in = connection.getInputStream();
+			}
+			try {
+				CRC32 crc = new CRC32();
+				byte[] buffer = new byte[1 << 16];
+				int read;
+				while ((read = in.read(buffer)) >= 0) {
+					crc.update(buffer, 0, read);
+				}
+				return new Source(url.toExternalForm(), length, lastModified, crc.getValue());
+			} finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * @return true if the file is still in this state, its checksum only
+		 * being computed if its size and modification time are the same
+		 */
+		boolean isCurrent() throws IOException {
+			URL url = new URL(this.url);
+			if ("file".equals(url.getProtocol())) {
+				File file = Files.fileFromURL(url);
+				if (!file.isFile() || file.length() != length || file.lastModified() != lastModified) {
+					return false;
+				}
+			}
+			Source current = of(url);
+			return current.length == length && current.lastModified == lastModified
+					&& current.checksum == checksum;
+		}
+	}
+
+	/**
+	 * Reads the state of the definition of a gazetteer and of its lists
+	 *
+	 * @param definition a definition whose nodes are loaded
+	 */
+	static List<Source> sources(LinearDefinition definition) throws IOException {
+		List<Source> sources = new ArrayList<>(definition.size() + 1);
+		sources.add(Source.of(definition.getURL()));
+		for (LinearNode node : definition.getNodes()) {
+			sources.add(Source.of(listURL(definition.getURL(), node)));
+		}
+		return sources;
+	}
+
+	private static URL listURL(URL definitionURL, LinearNode node) throws MalformedURLException {
+		return new URL(definitionURL, node.getList());
+	}
+
+	/**
+	 * Writes a snapshot of the lists of a definition and of their trie, through
+	 * a temporary file renamed once it is complete so that a snapshot being
+	 * read is never partly written
+	 *
+	 * @param file the snapshot
+	 * @param definition the definition, mapping its nodes to their lists
+	 * @param trie the trie of the literal entries of the lists, or null if
+	 * they are matched by their minimal automaton. The entries of the lists
+	 * missing from it have no state in the snapshot.
+	 * @param sources the state of the definition and of the lists when they
+	 * were loaded, see {@link #sources(LinearDefinition)}
+	 * @throws IOException if the snapshot cannot be written, or a feature of
+	 * an entry has a value that is not a string
+	 */
+	static void write(File file, LinearDefinition definition, LiteralTrie trie, List<Source> sources)
+			throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+			Writer writer = new Writer(out);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writer.string(definition.getURL().toExternalForm());
+			writer.string(definition.getSeparator());
+			writer.number(sources.size());
+			for (Source source : sources) {
+				writer.string(source.url);
+				out.writeLong(source.length);
+				out.writeLong(source.lastModified);
+				out.writeLong(source.checksum);
+			}
+			writeTransitions(writer, trie);
+			writer.number(definition.size());
+			for (LinearNode node : definition.getNodes()) {
+				writer.string(node.getList());
+				writer.string(node.getMajorType());
+				writer.string(node.getMinorType());
+				writer.string(node.getLanguage());
+				writer.string(node.getAnnotationType());
+				writer.string(node.getEngine());
+				GazetteerList list = definition.getListsByNode().get(node);
+				writer.number(list.size());
+				for (GazetteerNode gazNode : list) {
+					String entry = gazNode.getEntry();
+					writer.text(entry);
+					int state = CompiledEntry.isLiteral(entry) && trie != null
+							? trie.state(entry) : LiteralTrie.NO_STATE;
+					writer.number(state + 1);
+					Map<String, Object> features = gazNode.getFeatureMap();
+					if (features == null) {
+						writer.number(0);
+						continue;
+					}
+					writer.number(features.size());
+					for (Map.Entry<String, Object> feature : features.entrySet()) {
+						Object value = feature.getValue();
+						if (value != null && !(value instanceof String)) {
+							throw new IOException("The feature " + feature.getKey() + " of the entry "
+									+ entry + " of list " + node.getList() + " is not a string: " + value);
+						}
+						writer.string(feature.getKey());
+						writer.string((String) value);
+					}
+				}
+			}
+			out.close();
+			out = null;
+			try {
+				java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException ex) {
+				java.nio.file.Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			IOUtils.closeQuietly(out);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Writes the transitions of a trie: its number of states, then the number
+	 * of transitions of each state followed by their chars and target states.
+	 * A gazetteer matching its literal entries by their minimal automaton
+	 * has no trie, written as a trie without transitions.
+	 */
+	private static void writeTransitions(Writer writer, LiteralTrie trie) throws IOException {
+		if (trie == null) {
+			writer.number(1);
+			writer.number(0);
+			return;
+		}
+		int[] edgeStart = trie.edgeStart();
+		char[] edgeChars = trie.edgeChars();
+		int[] edgeTargets = trie.edgeTargets();
+		writer.number(trie.size());
+		for (int s = 0; s < trie.size(); s++) {
+			writer.number(edgeStart[s + 1] - edgeStart[s]);
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				writer.number(edgeChars[e]);
+				writer.number(edgeTargets[e]);
+			}
+		}
+	}
+
+	/**
+	 * Reads a snapshot, checking that it is up to date before reading its
+	 * trie and its lists. A snapshot in a file is mapped into memory.
+	 *
+	 * @param snapshot the snapshot
+	 * @param definitionURL the definition the snapshot must have been taken
+	 * from
+	 * @param separator the separator of the features the lists must have been
+	 * read with
+	 * @return the definition, the transitions of the trie and the final
+	 * states of the entries
+	 * @throws StaleSnapshotException if the snapshot is out of date
+	 * @throws IOException if the snapshot cannot be read
+	 */
+	static GazetteerSnapshot read(URL snapshot, URL definitionURL, String separator)
+			throws IOException, StaleSnapshotException {
+		ByteBuffer buffer;
+		if ("file".equals(snapshot.getProtocol())) {
+			FileChannel channel = FileChannel.open(Files.fileFromURL(snapshot).toPath(),
+					StandardOpenOption.READ);
+			try {
+				buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			} finally {
+				channel.close();
+			}
+		} else {
+			InputStream in = snapshot.openStream();
+			try {
+				buffer = ByteBuffer.wrap(IOUtils.toByteArray(in));
+			} finally {
+				in.close();
+			}
+		}
+		try {
+			return read(new Reader(buffer), definitionURL, separator);
+		} catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException
+				| NegativeArraySizeException ex) {
+			throw new IOException("Corrupt snapshot " + snapshot, ex);
+		}
+	}
+
+	private static GazetteerSnapshot read(Reader reader, URL definitionURL, String separator)
+			throws IOException, StaleSnapshotException {
+		ByteBuffer in = reader.buffer;
+		if (in.getInt() != MAGIC) {
+			throw new IOException("Not a gazetteer snapshot");
+		}
+		int version = in.getInt();
+		if (version != VERSION) {
+			throw new StaleSnapshotException("written in format " + version + " instead of " + VERSION);
+		}
+		String url = reader.string();
+		if (!definitionURL.toExternalForm().equals(url)) {
+			throw new StaleSnapshotException("taken from " + url);
+		}
+		String snapshotSeparator = reader.string();
+		if (snapshotSeparator == null ? separator != null : !snapshotSeparator.equals(separator)) {
+			throw new StaleSnapshotException("taken with the separator " + snapshotSeparator);
+		}
+		int sources = reader.number();
+		for (int i = 0; i < sources; i++) {
+			Source source = new Source(reader.string(), in.getLong(), in.getLong(), in.getLong());
+			if (!source.isCurrent()) {
+				throw new StaleSnapshotException(source.url + " changed");
+			}
+		}
+		LiteralTrie.Transitions trie = readTransitions(reader);
+		boolean complete = true;
+		LinearDefinition definition = new LinearDefinition();
+		definition.setURL(definitionURL);
+		definition.setSeparator(separator);
+		Map<LinearNode, int[]> finalStates = new HashMap<>();
+		// as set by GazetteerList.load()
+		String nodeSeparator = separator == null || separator.isEmpty() ? null : separator;
+		int nodes = reader.number();
+		for (int i = 0; i < nodes; i++) {
+			String listName = reader.string();
+			String majorType = reader.string();
+			String minorType = reader.string();
+			String language = reader.string();
+			String annotationType = reader.string();
+			LinearNode node = new LinearNode(listName, minorType, majorType, language, annotationType);
+			node.setEngine(reader.string());
+			GazetteerList list = new GazetteerList();
+			list.setSeparator(separator);
+			list.setURL(listURL(definitionURL, node));
+			list.setEncoding(definition.getListEncoding());
+			int entries = reader.number();
+			List<GazetteerNode> gazNodes = new ArrayList<>(entries);
+			int[] entryStates = new int[entries];
+			for (int j = 0; j < entries; j++) {
+				String entry = reader.text();
+				int state = reader.number() - 1;
+				if (state >= trie.size()) {
+					throw new IOException("No state " + state + " in the trie");
+				}
+				if (state == LiteralTrie.NO_STATE && CompiledEntry.isLiteral(entry)) {
+					// a list that was not compiled
+					complete = false;
+				}
+				entryStates[j] = state;
+				int features = reader.number();
+				Map<String, Object> featureMap = null;
+				if (features > 0) {
+					// the features are iterated in the order they were
+					// written, the order of the map they were read from
+					featureMap = new LinkedHashMap<>(features);
+					for (int k = 0; k < features; k++) {
+						featureMap.put(reader.string(), reader.string());
+					}
+				}
+				gazNodes.add(new GazetteerNode(entry, featureMap, nodeSeparator));
+			}
+			list.addAll(gazNodes);
+			list.setModified(false);
+			definition.add(node, list);
+			finalStates.put(node, entryStates);
+		}
+		definition.setModified(false);
+		if (!complete) {
+			return new GazetteerSnapshot(definition, null, null);
+		}
+		return new GazetteerSnapshot(definition, trie, finalStates);
+	}
+
+	/**
+	 * Reads the transitions written by
+	 * {@link #writeTransitions(Writer, LiteralTrie)}, sorted by char for each
+	 * state
+	 */
+	private static LiteralTrie.Transitions readTransitions(Reader reader) throws IOException {
+		int states = reader.number();
+		int[] edgeStart = new int[states + 1];
+		char[] edgeChars = new char[Math.max(states - 1, 0)];
+		int[] edgeTargets = new int[edgeChars.length];
+		int edges = 0;
+		for (int s = 0; s < states; s++) {
+			int count = reader.number();
+			if (edges + count > edgeChars.length) {
+				throw new IOException("More transitions than states in the trie");
+			}
+			for (int k = 0; k < count; k++) {
+				edgeChars[edges] = (char) reader.number();
+				int target = reader.number();
+				if (target <= 0 || target >= states) {
+					throw new IOException("No state " + target + " in the trie");
+				}
+				edgeTargets[edges++] = target;
+			}
+			edgeStart[s + 1] = edges;
+		}
+		if (edges != edgeChars.length) {
+			throw new IOException("Fewer transitions than states in the trie");
+		}
+		return new LiteralTrie.Transitions(edgeStart, edgeChars, edgeTargets);
+	}
+
+	/**
+	 * Writes the numbers and the strings of a snapshot
+	 */
+	private static final class Writer {
+
+		private final DataOutputStream out;
+
+		private final Map<String, Integer> strings = new HashMap<>();
+
+		Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		void number(int n) throws IOException {
+			while ((n & ~0x7F) != 0) {
+				out.writeByte((n & 0x7F) | 0x80);
+				n >>>= 7;
+			}
+			out.writeByte(n);
+		}
+
+		/**
+		 * Writes 0 for null, the index of a string plus 1 if it was already
+		 * written, or else the next index followed by the string
+		 */
+		void string(String s) throws IOException {
+			if (s == null) {
+				number(0);
+				return;
+			}
+			Integer index = strings.get(s);
+			if (index != null) {
+				number(index + 1);
+				return;
+			}
+			strings.put(s, strings.size());
+			number(strings.size());
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			number(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Writes a string that is not shared, e.g. an entry: 0 for null, or
+		 * its length in bytes plus 1 followed by the string
+		 */
+		void text(String s) throws IOException {
+			if (s == null) {
+				number(0);
+				return;
+			}
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			number(bytes.length + 1);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads the numbers and the strings of a snapshot
+	 */
+	private static final class Reader {
+
+		final ByteBuffer buffer;
+
+		private final List<String> strings = new ArrayList<>();
+
+		private byte[] bytes = new byte[256];
+
+		Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		int number() throws IOException {
+			int n = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				byte b = buffer.get();
+				n |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return n;
+				}
+			}
+			throw new IOException("Invalid number in snapshot");
+		}
+
+		String string() throws IOException {
+			int index = number();
+			if (index == 0) {
+				return null;
+			}
+			if (index <= strings.size()) {
+				return strings.get(index - 1);
+			}
+			if (index != strings.size() + 1) {
+				throw new IOException("Invalid string index in snapshot");
+			}
+			String s = utf8(number());
+			strings.add(s);
+			return s;
+		}
+
+		String text() throws IOException {
+			int length = number();
+			return length == 0 ? null : utf8(length - 1);
+		}
+
+		private String utf8(int length) {
+			if (length > bytes.length) {
+				bytes = new byte[Math.max(length, 2 * bytes.length)];
+			}
+			buffer.get(bytes, 0, length);
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+	}
+}
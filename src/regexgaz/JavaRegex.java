@@ -0,0 +1,47 @@
+package regexgaz;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches an entry with java.util.regex. It supports the whole syntax of
+ * {@link Pattern}, but a badly written expression may take an exponential
+ * time to search a text.
+ */
+final class JavaRegex implements EntryRegex {
+
+	private final Pattern pattern;
+
+	JavaRegex(Pattern pattern) {
+		this.pattern = pattern;
+	}
+
+	@Override
+	public RegexMatcher matcher(CharSequence text) {
+		final Matcher matcher = pattern.matcher(text);
+		matcher.useTransparentBounds(true);
+		matcher.useAnchoringBounds(false);
+		return new RegexMatcher() {
+			@Override
+			public RegexMatcher region(int start, int end) {
+				matcher.region(start, end);
+				return this;
+			}
+
+			@Override
+			public boolean find() {
+				return matcher.find();
+			}
+
+			@Override
+			public int start() {
+				return matcher.start();
+			}
+
+			@Override
+			public int end() {
+				return matcher.end();
+			}
+		};
+	}
+}
@@ -20,6 +20,7 @@ package regexgaz;
 import gate.creole.AbstractLanguageResource;
 import gate.creole.ResourceInstantiationException;
 import gate.creole.gazetteer.InvalidFormatException;
+import gate.event.ProgressListener;
 import gate.util.BomStrippingInputStreamReader;
 import gate.util.Files;
 import gate.util.GateRuntimeException;
@@ -40,6 +41,12 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.IOUtils;
 
@@ -118,25 +125,128 @@ public class LinearDefinition extends AbstractLanguageResource
 	 */
 	public Map<LinearNode, GazetteerList> loadLists(boolean isOrdered)
 			throws ResourceInstantiationException {
-		try {
-			gazListsByNode = new HashMap<>();
-			Iterator<LinearNode> inodes = nodes.iterator();
-			while (inodes.hasNext()) {
-				LinearNode node = inodes.next();
+		return loadLists(isOrdered, 1, null);
+	}
 
-				GazetteerList list = new GazetteerList();
-				list.setSeparator(separator);
-				URL lurl = new URL(url, node.getList());
-				list.setURL(lurl);
-				list.setEncoding(listEncoding);
-				list.load(isOrdered);
+	/**
+	 * Loads the gazetteer lists and maps them to the nodes, reading and
+	 * parsing several lists at once
+	 *
+	 * @return a map of nodes vs GazetteerLists
+	 * @param isOrdered true if the feature maps used should be ordered
+	 * @param threads the maximum number of lists loaded at once
+	 * @param listener notified of the percentage of the lists loaded, or null
+	 * @throws ResourceInstantiationException when the resource cannot be
+	 * created
+	 * @see #loadLists(boolean, int, ProgressListener, ListProcessor)
+	 */
+	public Map<LinearNode, GazetteerList> loadLists(boolean isOrdered, int threads,
+			ProgressListener listener) throws ResourceInstantiationException {
+		return loadLists(isOrdered, threads, listener, null);
+	}
 
-				gazListsByNode.put(node, list);
+	/**
+	 * Processes each list loaded by
+	 * {@link LinearDefinition#loadLists(boolean, int, ProgressListener, ListProcessor)}
+	 * as part of its loading
+	 */
+	public interface ListProcessor {
+
+		/**
+		 * Processes a list once it is loaded, on the thread that loaded it.
+		 * Several lists may be processed at once.
+		 *
+		 * @throws ResourceInstantiationException if the list cannot be
+		 * processed, which stops the loading of the lists
+		 */
+		void process(LinearNode node, GazetteerList list) throws ResourceInstantiationException;
+	}
+
+	/**
+	 * Loads the gazetteer lists and maps them to the nodes, reading, parsing
+	 * and processing several lists at once. Whatever the order they were
+	 * loaded in, the lists are put into the map, a HashMap as when they are
+	 * loaded one after the other, in the order of the definition. As the
+	 * iteration order of a HashMap only depends on its keys and on the
+	 * order they were put in, the map iterates over the lists in the same
+	 * order whatever the number of threads, though not in the order of the
+	 * definition.
+	 *
+	 * @return a map of nodes vs GazetteerLists
+	 * @param isOrdered true if the feature maps used should be ordered
+	 * @param threads the maximum number of lists loaded at once
+	 * @param listener notified of the percentage of the lists loaded, or null
+	 * @param processor processes each list as soon as it is loaded, on the
+	 * same thread, or null
+	 * @throws ResourceInstantiationException when the resource cannot be
+	 * created
+	 */
+	public Map<LinearNode, GazetteerList> loadLists(final boolean isOrdered, int threads,
+			ProgressListener listener, final ListProcessor processor) throws ResourceInstantiationException {
+		List<LinearNode> toLoad = new ArrayList<>(nodes);
+		List<GazetteerList> loaded = new ArrayList<>(toLoad.size());
+		if (threads <= 1 || toLoad.size() <= 1) {
+			for (LinearNode node : toLoad) {
+				loaded.add(loadList(node, isOrdered, processor));
+				progress(listener, loaded.size(), toLoad.size());
 			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, toLoad.size()));
+			try {
+				CompletionService<GazetteerList> completion = new ExecutorCompletionService<>(executor);
+				List<Future<GazetteerList>> tasks = new ArrayList<>(toLoad.size());
+				for (final LinearNode node : toLoad) {
+					tasks.add(completion.submit(() -> loadList(node, isOrdered, processor)));
+				}
+				for (int done = 1; done <= tasks.size(); done++) {
+					// a list that cannot be loaded stops the others
+					completion.take().get();
+					progress(listener, done, tasks.size());
+				}
+				for (Future<GazetteerList> task : tasks) {
+					loaded.add(task.get());
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new ResourceInstantiationException(ex);
+			} catch (ExecutionException ex) {
+				if (ex.getCause() instanceof ResourceInstantiationException) {
+					throw (ResourceInstantiationException) ex.getCause();
+				}
+				throw new ResourceInstantiationException(ex.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		gazListsByNode = new HashMap<>();
+		for (int i = 0; i < toLoad.size(); i++) {
+			gazListsByNode.put(toLoad.get(i), loaded.get(i));
+		}
+		return gazListsByNode;
+	}
+
+	private GazetteerList loadList(LinearNode node, boolean isOrdered, ListProcessor processor)
+			throws ResourceInstantiationException {
+		GazetteerList list = new GazetteerList();
+		try {
+			list.setSeparator(separator);
+			URL lurl = new URL(url, node.getList());
+			list.setURL(lurl);
+			list.setEncoding(listEncoding);
+			list.load(isOrdered);
 		} catch (MalformedURLException | ResourceInstantiationException ex) {
 			throw new ResourceInstantiationException(ex);
 		}
-		return gazListsByNode;
+		if (processor != null) {
+			processor.process(node, list);
+		}
+		return list;
+	}
+
+	private static void progress(ProgressListener listener, int done, int total) {
+		if (listener != null) {
+			listener.progressChanged(done * 100 / total);
+		}
 	}
 
 	/**
@@ -199,6 +309,16 @@ public class LinearDefinition extends AbstractLanguageResource
 		return gazListsByNode;
 	}
 
+	/**
+	 * Replaces the lists mapped to the nodes by a map of lists read again,
+	 * taken as it is, as the map returned by loadLists
+	 *
+	 * @param listsByNode the lists of all the nodes, by node
+	 */
+	void setListsByNode(Map<LinearNode, GazetteerList> listsByNode) {
+		gazListsByNode = listsByNode;
+	}
+
 	public Map<String, LinearNode> getNodesByListNames() {
 		return nodesByList;
 	}
@@ -504,6 +624,24 @@ public class LinearDefinition extends AbstractLanguageResource
 		return result;
 	}
 
+	/**
+	 * Adds a new node with its list already loaded, e.g. from a
+	 * {@link GazetteerSnapshot}, only if its list is new
+	 *
+	 * @param node a node
+	 * @param list the loaded list of the node
+	 */
+	void add(LinearNode node, GazetteerList list) {
+		String listName = node.getList();
+		if (!nodesByList.containsKey(listName)) {
+			gazListsByNode.put(node, list);
+			nodes.add(node);
+			nodesByList.put(listName, node);
+			lists.add(listName);
+			isModified = true;
+		}
+	}
+
 	@Override
 	public boolean remove(Object o) {
 		boolean result = false;
@@ -19,7 +19,7 @@ import gate.creole.gazetteer.InvalidFormatException;
 
 /**
  * Linear node specifies an entry of the type :
- list:majorType:minorType:language:annotationType
+ list:majorType:minorType:language:annotationType:engine
  */
 public class LinearNode {
 
@@ -36,6 +36,12 @@ public class LinearNode {
 
 	private String annotationType;
 
+	/**
+	 * the engine matching the regular expressions of the list, null to use
+	 * the one of the gazetteer
+	 */
+	private String engine;
+
 	/**
 	 * Constructor
 	 *
@@ -78,6 +84,7 @@ public class LinearNode {
 		int secondColon = node.indexOf(':', firstColon + 1);
 		int thirdColon = node.indexOf(':', secondColon + 1);
 		int fourthColon = node.indexOf(':', thirdColon + 1);
+		int fifthColon = node.indexOf(':', fourthColon + 1);
 		annotationType = Constants.LOOKUP; // default value
 		// must be lookup
 		// for backword
@@ -102,7 +109,12 @@ public class LinearNode {
 					annotationType = Constants.LOOKUP;
 				} else {
 					language = node.substring(thirdColon + 1, fourthColon);
-					annotationType = node.substring(fourthColon + 1);
+					if (fifthColon == -1) {
+						annotationType = node.substring(fourthColon + 1);
+					} else {
+						annotationType = node.substring(fourthColon + 1, fifthColon);
+						engine = node.substring(fifthColon + 1);
+					}
 				}
 			}
 		}
@@ -160,6 +172,19 @@ public class LinearNode {
 		this.annotationType = annotationType;
 	}
 
+	/**
+	 * Gets the engine matching the regular expressions of the list (the
+	 * engine is optional)
+	 * @return the name of the engine, or null to use the one of the gazetteer
+	 */
+	public String getEngine() {
+		return engine;
+	}
+
+	public void setEngine(String engine) {
+		this.engine = engine;
+	}
+
 	@Override
 	public String toString() {
 		String result = list + ':' + majorType;
@@ -172,17 +197,25 @@ public class LinearNode {
 			}
 			result += ':' + language;
 		}
+		boolean hasEngine = (null != engine) && (0 != engine.length());
 		// if the annotation type is Lookup we don't really need to add
-		// it to the definition file
-		if ((null != annotationType) && (0 != annotationType.length())
-				&& !annotationType.equals(Constants.LOOKUP)) {
+		// it to the definition file, unless an engine follows
+		if (hasEngine || ((null != annotationType) && (0 != annotationType.length())
+				&& !annotationType.equals(Constants.LOOKUP))) {
 			if ((null == minorType) || (0 == minorType.length())) {
 				result += ':';
 			}
 			if (language == null || (0 == language.length())) {
 				result += ':';
 			}
-			result += ':' + annotationType;
+			if ((null == annotationType) || (0 == annotationType.length())) {
+				result += ':' + Constants.LOOKUP;
+			} else {
+				result += ':' + annotationType;
+			}
+		}
+		if (hasEngine) {
+			result += ':' + engine;
 		}
 		return result;
 	}
@@ -248,6 +281,13 @@ public class LinearNode {
 		} else if (!minorType.equals(other.minorType)) {
 			return false;
 		}
+		if (engine == null) {
+			if (other.engine != null) {
+				return false;
+			}
+		} else if (!engine.equals(other.engine)) {
+			return false;
+		}
 		return true;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,405 @@
+package regexgaz;
+
+import java.util.Arrays;
+
+/**
+ * Matches an entry in a time linear in the length of the text, whatever the
+ * expression. The expression is compiled into a Thompson NFA which is
+ * simulated in a single pass over the text, keeping all the alive threads in
+ * order of preference (Pike's VM), so that the matches are the ones that
+ * java.util.regex would find by backtracking: the leftmost, and among them
+ * the one preferred by the greedy and reluctant quantifiers and the
+ * alternations.
+ * <p>
+ * Only the syntax accepted by {@link RegexParser} is supported, which covers
+ * the usual gazetteer entries but not the back references, the lookaround
+ * or the possessive quantifiers.
+ */
+final class LinearRegex implements EntryRegex {
+
+	private final Nfa nfa;
+
+	private final int start;
+
+	/**
+	 * true if no match starts between the two chars of a surrogate pair, see
+	 * {@link #skipsPairs(RegexParser.Node)}
+	 */
+	private final boolean skipsPairs;
+
+	private LinearRegex(Nfa nfa, int start, boolean skipsPairs) {
+		this.nfa = nfa;
+		this.start = start;
+		this.skipsPairs = skipsPairs;
+	}
+
+	/**
+	 * Compiles the pattern of an entry
+	 *
+	 * @param root the syntax tree of the pattern, parsed with the DOTALL flag
+	 * @throws RegexParser.UnsupportedRegexException if the pattern uses a
+	 * construct that is not supported
+	 */
+	static LinearRegex compile(RegexParser.Node root) throws RegexParser.UnsupportedRegexException {
+		checkRepeats(root);
+		Nfa nfa = new Nfa();
+		int start = nfa.add(root, 0);
+		if (start < 0) {
+			throw new RegexParser.UnsupportedRegexException("too large");
+		}
+		nfa.trim();
+		return new LinearRegex(nfa, start, skipsPairs(root));
+	}
+
+	/**
+	 * Tells whether java.util.regex starts no match of an expression between
+	 * the two chars of a surrogate pair, which it decides from the syntax of
+	 * the expression: it does when a literal, an escape or a character class
+	 * may match a supplementary character or a surrogate, but not for the
+	 * dot. The other expressions may match from the low surrogate of a pair,
+	 * which they read as a char of its own.
+	 */
+	private static boolean skipsPairs(RegexParser.Node node) {
+		if (node instanceof RegexParser.Atom) {
+			CharSet set = ((RegexParser.Atom) node).set;
+			return !RegexParser.isDot(set) && (set.maxCharCount() > 1 || set instanceof CharSet.Ranges
+					&& ((CharSet.Ranges) set).intersects(Character.MIN_SURROGATE, Character.MAX_SURROGATE));
+		} else if (node instanceof RegexParser.Repeat) {
+			return skipsPairs(((RegexParser.Repeat) node).node);
+		} else if (node instanceof RegexParser.Sequence) {
+			for (RegexParser.Node item : ((RegexParser.Sequence) node).items) {
+				if (skipsPairs(item)) {
+					return true;
+				}
+			}
+		} else if (node instanceof RegexParser.Alternation) {
+			for (RegexParser.Node alternative : ((RegexParser.Alternation) node).alternatives) {
+				if (skipsPairs(alternative)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Rejects the repetitions of an expression that can match the empty
+	 * string, like (a?)*: java.util.regex handles the empty iterations in
+	 * ways an NFA cannot tell from the other ones.
+	 */
+	private static void checkRepeats(RegexParser.Node node) throws RegexParser.UnsupportedRegexException {
+		if (node instanceof RegexParser.Repeat) {
+			RegexParser.Repeat repeat = (RegexParser.Repeat) node;
+			if ((repeat.max > 1 || repeat.max == RegexParser.UNBOUNDED) && repeat.node.minLength() == 0) {
+				throw new RegexParser.UnsupportedRegexException("repetition of an empty match");
+			}
+			checkRepeats(repeat.node);
+		} else if (node instanceof RegexParser.Sequence) {
+			for (RegexParser.Node item : ((RegexParser.Sequence) node).items) {
+				checkRepeats(item);
+			}
+		} else if (node instanceof RegexParser.Alternation) {
+			for (RegexParser.Node alternative : ((RegexParser.Alternation) node).alternatives) {
+				checkRepeats(alternative);
+			}
+		}
+	}
+
+	@Override
+	public RegexMatcher matcher(CharSequence text) {
+		return new Simulation(text);
+	}
+
+	/**
+	 * The threads alive at an offset, by order of preference: the instruction
+	 * each one has reached and the offset where it started
+	 */
+	private static final class Threads {
+
+		final int[] pcs;
+
+		final int[] starts;
+
+		int size;
+
+		/**
+		 * the instructions already reached at the offset, including the
+		 * SPLIT and ASSERT ones
+		 */
+		private final int[] marks;
+
+		private int generation;
+
+		Threads(int capacity) {
+			pcs = new int[capacity];
+			starts = new int[capacity];
+			marks = new int[capacity];
+		}
+
+		void clear() {
+			size = 0;
+			if (++generation == Integer.MAX_VALUE) {
+				Arrays.fill(marks, 0);
+				generation = 1;
+			}
+		}
+
+		/**
+		 * @return false if the instruction was already reached
+		 */
+		boolean mark(int pc) {
+			if (marks[pc] == generation) {
+				return false;
+			}
+			marks[pc] = generation;
+			return true;
+		}
+
+		void add(int pc, int start) {
+			pcs[size] = pc;
+			starts[size] = start;
+			size++;
+		}
+	}
+
+	/**
+	 * The search of the matches in a text
+	 */
+	private final class Simulation implements RegexMatcher {
+
+		private final CharSequence text;
+
+		private final int length;
+
+		private int from;
+
+		private int to;
+
+		/**
+		 * the bounds of the last match, first being -1 if there is none
+		 */
+		private int first = -1;
+
+		private int last;
+
+		private Threads current = new Threads(nfa.size());
+
+		private Threads next = new Threads(nfa.size());
+
+		private Threads afterNext = new Threads(nfa.size());
+
+		private final int[] stack = new int[2 * nfa.size() + 1];
+
+		private WordBoundaries boundaries;
+
+		/**
+		 * the offset of the last word boundary check, and its result
+		 */
+		private int boundaryOffset = -1;
+
+		private boolean boundary;
+
+		Simulation(CharSequence text) {
+			this.text = text;
+			length = text.length();
+			to = length;
+		}
+
+		@Override
+		public RegexMatcher region(int start, int end) {
+			if (start < 0 || start > end || end > length) {
+				throw new IndexOutOfBoundsException("region [" + start + ", " + end + "]");
+			}
+			from = start;
+			to = end;
+			first = -1;
+			last = 0;
+			return this;
+		}
+
+		@Override
+		public boolean find() {
+			// as in Matcher.find(), the search resumes after the last match,
+			// one char further if it was empty
+			int index = last;
+			if (index == first) {
+				index++;
+			}
+			if (index < from) {
+				index = from;
+			}
+			if (index > to) {
+				first = -1;
+				return false;
+			}
+			return search(index);
+		}
+
+		@Override
+		public int start() {
+			if (first < 0) {
+				throw new IllegalStateException("No match available");
+			}
+			return first;
+		}
+
+		@Override
+		public int end() {
+			if (first < 0) {
+				throw new IllegalStateException("No match available");
+			}
+			return last;
+		}
+
+		/**
+		 * Runs the threads from an offset until the preferred match of the
+		 * leftmost offset is known. The threads read the text by code point,
+		 * so a thread reading a surrogate pair goes two chars ahead, and for
+		 * the expressions that java.util.regex starts nowhere inside a pair,
+		 * no match starts inside one but at the offset. The chars inside the
+		 * pairs are still stepped over one by one, so that the threads ahead
+		 * of the current offset keep their order of preference.
+		 */
+		private boolean search(int offset) {
+			int matchStart = -1;
+			int matchEnd = -1;
+			current.clear();
+			next.clear();
+			afterNext.clear();
+			int i = offset;
+			while (true) {
+				if (matchStart < 0 && (i == offset || !skipsPairs || !isInsidePair(i))) {
+					// a new thread starting here, the least preferred one
+					addThread(current, start, i, i);
+				}
+				if (current.size > 0) {
+					int cp = -1;
+					int width = 1;
+					if (i < to) {
+						cp = Character.codePointAt(text, i);
+						width = Character.charCount(cp);
+						if (i + width > to) {
+							// a surrogate pair across the end of the region
+							cp = -1;
+						}
+					}
+					Threads target = width == 1 ? next : afterNext;
+					for (int k = 0; k < current.size; k++) {
+						int pc = current.pcs[k];
+						if (nfa.op[pc] == Nfa.MATCH) {
+							// the threads after this one are less preferred
+							matchStart = current.starts[k];
+							matchEnd = i;
+							break;
+						}
+						if (cp >= 0 && nfa.sets.get(nfa.arg[pc]).contains(cp)) {
+							addThread(target, nfa.out[pc], i + width, current.starts[k]);
+						}
+					}
+				}
+				if (i >= to || (matchStart >= 0 && next.size == 0 && afterNext.size == 0)) {
+					break;
+				}
+				Threads done = current;
+				current = next;
+				next = afterNext;
+				afterNext = done;
+				afterNext.clear();
+				i++;
+			}
+			if (matchStart < 0) {
+				first = -1;
+				return false;
+			}
+			first = matchStart;
+			last = matchEnd;
+			return true;
+		}
+
+		private boolean isInsidePair(int offset) {
+			return offset < length && Character.isLowSurrogate(text.charAt(offset))
+					&& Character.isHighSurrogate(text.charAt(offset - 1));
+		}
+
+		/**
+		 * Adds a thread and the threads it leads to through the SPLIT and
+		 * ASSERT instructions, by order of preference
+		 */
+		private void addThread(Threads threads, int pc, int offset, int threadStart) {
+			int top = 0;
+			stack[top++] = pc;
+			while (top > 0) {
+				int instruction = stack[--top];
+				if (!threads.mark(instruction)) {
+					continue;
+				}
+				switch (nfa.op[instruction]) {
+					case Nfa.SPLIT:
+						stack[top++] = nfa.out1[instruction];
+						stack[top++] = nfa.out[instruction];
+						break;
+					case Nfa.ASSERT:
+						if (check(nfa.arg[instruction], offset)) {
+							stack[top++] = nfa.out[instruction];
+						}
+						break;
+					default:
+						threads.add(instruction, threadStart);
+				}
+			}
+		}
+
+		/**
+		 * Checks an assertion as java.util.regex does with transparent and
+		 * non-anchoring bounds
+		 */
+		private boolean check(int kind, int offset) {
+			switch (kind) {
+				case RegexParser.BEGIN_INPUT:
+					return offset == 0;
+				case RegexParser.END_INPUT:
+					return offset == length;
+				case RegexParser.END_INPUT_OR_TERMINATOR:
+					return isEndOrTerminator(offset);
+				case RegexParser.WORD_BOUNDARY:
+					return isBoundary(offset);
+				default:
+					return !isBoundary(offset);
+			}
+		}
+
+		/**
+		 * @return true at the end of the text, or before a line terminator
+		 * ending the text
+		 */
+		private boolean isEndOrTerminator(int offset) {
+			if (offset < length - 2) {
+				return false;
+			}
+			if (offset == length - 2
+					&& (text.charAt(offset) != '\r' || text.charAt(offset + 1) != '\n')) {
+				return false;
+			}
+			if (offset < length) {
+				char c = text.charAt(offset);
+				if (c == '\n') {
+					// not between \r and \n
+					return offset == 0 || text.charAt(offset - 1) != '\r';
+				}
+				return c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+			}
+			return true;
+		}
+
+		private boolean isBoundary(int offset) {
+			if (offset != boundaryOffset) {
+				if (boundaries == null) {
+					boundaries = new WordBoundaries(text);
+				}
+				boundary = boundaries.isBoundary(offset);
+				boundaryOffset = offset;
+			}
+			return boundary;
+		}
+	}
+}
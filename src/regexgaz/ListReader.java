@@ -0,0 +1,228 @@
+package regexgaz;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a gazetteer list, skipping the blank ones, without
+ * creating a string per line. The bytes are read and decoded by large blocks
+ * into a char array, in which each line is then found in a single pass that
+ * also checks whether it is blank and where its first separator is.
+ * <p>
+ * The lines are the ones {@link java.io.BufferedReader#readLine()} would
+ * return: they end with \n, \r or \r\n. A line is blank if it only has the
+ * whitespace matched by \s, a byte order mark at the start of the list is
+ * skipped, and the malformed input is replaced as by an
+ * {@link java.io.InputStreamReader}.
+ */
+final class ListReader {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+
+	private final CharsetDecoder decoder;
+
+	private final ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE);
+
+	private char[] chars = new char[BLOCK_SIZE];
+
+	/**
+	 * the chars decoded but not read yet are between position and limit
+	 */
+	private int position;
+
+	private int limit;
+
+	private boolean started;
+
+	/**
+	 * true once the channel has no more bytes
+	 */
+	private boolean channelDone;
+
+	/**
+	 * true once all the bytes have been decoded
+	 */
+	private boolean endOfInput;
+
+	/**
+	 * true if the last line ended with \r, so that a \n following it does
+	 * not end another line
+	 */
+	private boolean skipLineFeed;
+
+	private final int separator;
+
+	private int lineNumber;
+
+	private int lineStart;
+
+	private int lineEnd;
+
+	private int separatorIndex;
+
+	/**
+	 * @param separator the char whose first occurrence in each line is to be
+	 * found, or -1
+	 */
+	ListReader(ReadableByteChannel channel, Charset charset, int separator) {
+		this.channel = channel;
+		this.separator = separator;
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Reads the next line that is not blank
+	 *
+	 * @return false at the end of the list
+	 */
+	boolean next() throws IOException {
+		if (!started) {
+			started = true;
+			fill();
+			if (limit > 0 && chars[0] == '\uFEFF') {
+				position = 1;
+			}
+		}
+		while (true) {
+			if (skipLineFeed) {
+				if (position == limit && !endOfInput) {
+					compact();
+					fill();
+				}
+				skipLineFeed = false;
+				if (position < limit && chars[position] == '\n') {
+					position++;
+				}
+			}
+			int i = position;
+			boolean blank = true;
+			int firstSeparator = -1;
+			char[] buffer = chars;
+			int end = limit;
+			while (true) {
+				if (i == end) {
+					if (endOfInput) {
+						break;
+					}
+					// the line goes on in the next block
+					int shift = compact();
+					i -= shift;
+					if (firstSeparator >= 0) {
+						firstSeparator -= shift;
+					}
+					fill();
+					buffer = chars;
+					end = limit;
+					continue;
+				}
+				char c = buffer[i];
+				if (c == '\n' || c == '\r') {
+					break;
+				}
+				if (c == separator && firstSeparator < 0) {
+					firstSeparator = i;
+				}
+				if (blank && c != ' ' && c != '\t' && c != '\u000B' && c != '\f') {
+					blank = false;
+				}
+				i++;
+			}
+			if (i == position && i == limit) {
+				// the end of the list, after the last line
+				return false;
+			}
+			lineNumber++;
+			lineStart = position;
+			lineEnd = i;
+			separatorIndex = firstSeparator;
+			if (i < limit) {
+				skipLineFeed = chars[i] == '\r';
+				position = i + 1;
+			} else {
+				position = i;
+			}
+			if (!blank) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Moves the chars not read yet to the start of the array, which is grown
+	 * if they fill it
+	 *
+	 * @return the number of places the chars were moved by
+	 */
+	private int compact() {
+		int shift = position;
+		int length = limit - position;
+		if (shift == 0 && length == chars.length) {
+			chars = Arrays.copyOf(chars, 2 * chars.length);
+		} else if (shift > 0) {
+			System.arraycopy(chars, position, chars, 0, length);
+		}
+		position = 0;
+		limit = length;
+		return shift;
+	}
+
+	/**
+	 * Decodes the next block of the list after the chars not read yet, once
+	 * some room has been made for it
+	 */
+	private void fill() throws IOException {
+		CharBuffer out = CharBuffer.wrap(chars, limit, chars.length - limit);
+		while (out.position() == limit && !endOfInput) {
+			if (!channelDone && channel.read(bytes) < 0) {
+				channelDone = true;
+			}
+			bytes.flip();
+			CoderResult result = decoder.decode(bytes, out, channelDone);
+			bytes.compact();
+			if (channelDone && result.isUnderflow() && decoder.flush(out).isUnderflow()) {
+				endOfInput = true;
+			}
+		}
+		limit = out.position();
+	}
+
+	/**
+	 * @return the array holding the current line
+	 */
+	char[] chars() {
+		return chars;
+	}
+
+	int lineStart() {
+		return lineStart;
+	}
+
+	int lineEnd() {
+		return lineEnd;
+	}
+
+	/**
+	 * @return the index of the first separator of the current line in the
+	 * array, or -1 if there is none
+	 */
+	int separatorIndex() {
+		return separatorIndex;
+	}
+
+	/**
+	 * @return the number of the current line, counting the blank lines
+	 */
+	int lineNumber() {
+		return lineNumber;
+	}
+}
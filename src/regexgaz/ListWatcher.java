@@ -0,0 +1,150 @@
+package regexgaz;
+
+import gate.util.Files;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the files of the lists of a gazetteer and has the gazetteer reload
+ * the lists whose file is written, on a daemon thread. The changes are
+ * gathered until no file has changed for {@link #QUIET_MILLIS}, so that a
+ * list being written is reloaded once, when it is complete, and the lists
+ * changed together are reloaded together.
+ * <p>
+ * Only the lists read from files are watched. The definition is not: a list
+ * added to it or removed from it needs the gazetteer to be initialised
+ * again.
+ */
+final class ListWatcher implements Closeable {
+
+	/**
+	 * the time without any change after which the lists changed are reloaded
+	 */
+	static final long QUIET_MILLIS = 200;
+
+	private final RegexGazetteer gazetteer;
+
+	private final WatchService service;
+
+	/**
+	 * the lists watched, by the path of their file
+	 */
+	private final Map<Path, List<LinearNode>> nodesByPath = new HashMap<>();
+
+	/**
+	 * Starts watching the files of some lists
+	 *
+	 * @param gazetteer the gazetteer reloading the lists
+	 * @param listsByNode the lists, whose URL gives their file
+	 * @throws IOException if the directories of the files cannot be watched
+	 */
+	ListWatcher(RegexGazetteer gazetteer, Map<LinearNode, GazetteerList> listsByNode) throws IOException {
+		this.gazetteer = gazetteer;
+		for (Map.Entry<LinearNode, GazetteerList> e : listsByNode.entrySet()) {
+			URL url = e.getValue().getURL();
+			if (url != null && "file".equals(url.getProtocol())) {
+				Path path = Files.fileFromURL(url).toPath().toAbsolutePath().normalize();
+				List<LinearNode> nodes = nodesByPath.get(path);
+				if (nodes == null) {
+					nodes = new ArrayList<>(1);
+					nodesByPath.put(path, nodes);
+				}
+				nodes.add(e.getKey());
+			}
+		}
+		service = FileSystems.getDefault().newWatchService();
+		try {
+			Set<Path> directories = new HashSet<>();
+			for (Path path : nodesByPath.keySet()) {
+				if (directories.add(path.getParent())) {
+					path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+							StandardWatchEventKinds.ENTRY_MODIFY);
+				}
+			}
+		} catch (IOException | RuntimeException ex) {
+			service.close();
+			throw ex;
+		}
+		Thread thread = new Thread(this::watch, "RegexGazetteer list watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * @return the number of lists watched
+	 */
+	int size() {
+		int size = 0;
+		for (List<LinearNode> nodes : nodesByPath.values()) {
+			size += nodes.size();
+		}
+		return size;
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				Set<LinearNode> changed = new HashSet<>();
+				while (key != null) {
+					changed(key, changed);
+					key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				if (!changed.isEmpty()) {
+					gazetteer.reloadLists(changed);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException ex) {
+			// closed
+		}
+	}
+
+	/**
+	 * Adds the lists whose file changed according to the events of a key
+	 */
+	private void changed(WatchKey key, Set<LinearNode> changed) {
+		Path directory = (Path) key.watchable();
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// some events were lost: any list may have changed
+				for (List<LinearNode> nodes : nodesByPath.values()) {
+					changed.addAll(nodes);
+				}
+				continue;
+			}
+			List<LinearNode> nodes = nodesByPath.get(directory.resolve((Path) event.context()));
+			if (nodes != null) {
+				changed.addAll(nodes);
+			}
+		}
+		key.reset();
+	}
+
+	/**
+	 * Stops watching the lists. A reload running is not interrupted.
+	 */
+	@Override
+	public void close() {
+		try {
+			service.close();
+		} catch (IOException ex) {
+			// nothing more to watch
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package regexgaz;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A version of the lists of a gazetteer: the lists, by node, and the
+ * selections of them compiled so far. init() makes the first version, and
+ * each reload of changed lists (see {@link ListWatcher}) a new one, which
+ * replaces the previous one at once in the reference shared by the gazetteer
+ * and its {@link SharedDefaultGazetteer} duplicates. A document is matched
+ * against the selection of a single version from start to end.
+ * <p>
+ * The lists of a version are never modified. The entries of each list are
+ * compiled once, the first time a selection including the list is used, and
+ * the selections are built from them; both are then shared by the threads
+ * and duplicates using the version. Only the selections used last are kept.
+ */
+final class ListsVersion {
+
+	/**
+	 * the number of selections kept: the one used the longest time ago is
+	 * dropped when another one is compiled, and built again from the
+	 * compiled entries of its lists if it is used again
+	 */
+	static final int MAX_SELECTIONS = 8;
+
+	/**
+	 * the number of the version: 0 for the lists read by init(), then 1 for
+	 * the first reload...
+	 */
+	final int number;
+
+	final Map<LinearNode, GazetteerList> listsByNode;
+
+	/**
+	 * the entries of the lists compiled so far, by node, shared by the
+	 * selections including them
+	 */
+	final Map<LinearNode, List<CompiledEntry>> compiledNodes;
+
+	/**
+	 * the selections compiled so far, by selection, from the least recently
+	 * used one. Iterating over the map requires its lock.
+	 */
+	final Map<List<LinearNode>, CompiledLists> compiledSelections = Collections.synchronizedMap(
+			new LinkedHashMap<List<LinearNode>, CompiledLists>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<List<LinearNode>, CompiledLists> eldest) {
+					return size() > MAX_SELECTIONS;
+				}
+			});
+
+	ListsVersion(int number, Map<LinearNode, GazetteerList> listsByNode,
+			Map<LinearNode, List<CompiledEntry>> compiledNodes) {
+		this.number = number;
+		this.listsByNode = listsByNode;
+		this.compiledNodes = compiledNodes;
+	}
+}
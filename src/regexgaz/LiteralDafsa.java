@@ -0,0 +1,340 @@
+package regexgaz;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The minimal deterministic acyclic automaton of the literal entries of a
+ * gazetteer, which shares the common suffixes of the entries as well as
+ * their prefixes. It is built in a single pass over the entries sorted by
+ * phrase, each state being minimized as soon as no other phrase can reach it
+ * (Daciuk et al., Incremental construction of minimal acyclic finite-state
+ * automata, 2000).
+ * <p>
+ * The states have no output, so that sharing them never merges the entries
+ * of different phrases: each transition records the number of phrases that
+ * come before the ones it leads to, so that the phrases read from the
+ * initial state are numbered in order, and each phrase number gives the
+ * entries having that phrase. As the automaton has no failure links, a text
+ * is matched by reading it from each offset.
+ * <p>
+ * As in a {@link LiteralTrie}, the states are held in arrays indexed by state,
+ * the whitespace of an entry is a space and a sequence of it counts for one
+ * transition. The automaton is never modified once built.
+ */
+final class LiteralDafsa {
+
+	/**
+	 * the transitions of state s are the edges from edgeStart[s] to
+	 * edgeStart[s + 1], sorted by char
+	 */
+	private int[] edgeStart = new int[16];
+
+	private char[] edgeChars = new char[16];
+
+	private int[] edgeTargets = new int[16];
+
+	/**
+	 * the number of phrases read from the source of each edge before the
+	 * ones read through it
+	 */
+	private int[] edgeRanks = new int[16];
+
+	private boolean[] finals = new boolean[16];
+
+	/**
+	 * the number of phrases read from each state, used while building
+	 */
+	private int[] phrases = new int[16];
+
+	private int states;
+
+	private int edges;
+
+	private final int initialState;
+
+	/**
+	 * the entries having phrase p are the ones from entryStart[p] to
+	 * entryStart[p + 1]
+	 */
+	private final int[] entryStart;
+
+	private final int[] entries;
+
+	/**
+	 * the states registered so far, by their transitions, in an
+	 * open-addressing hash table, -1 being empty
+	 */
+	private int[] register = new int[1 << 10];
+
+	private int registered;
+
+	/**
+	 * the transitions of the states of the path of the last phrase added,
+	 * which are not minimized yet, by depth
+	 */
+	private char[][] pathChars = new char[16][];
+
+	private int[][] pathTargets = new int[16][];
+
+	private int[] pathSizes = new int[16];
+
+	private boolean[] pathFinals = new boolean[16];
+
+	/**
+	 * Builds the automaton of the literal entries of a compiled-entry table
+	 */
+	LiteralDafsa(List<CompiledEntry> compiledEntries) {
+		String[] entryPhrases = LiteralTrie.phrases(compiledEntries);
+		String[] sorted = LiteralTrie.sortedPhrases(entryPhrases);
+		int distinct = sorted.length;
+		Arrays.fill(register, -1);
+		String previous = "";
+		for (int i = 0; i < distinct; i++) {
+			add(previous, sorted[i]);
+			previous = sorted[i];
+		}
+		for (int d = previous.length(); d > 0; d--) {
+			pathTargets[d - 1][pathSizes[d - 1] - 1] = minimize(d);
+		}
+		initialState = minimize(0);
+		edgeStart[states] = edges;
+		edgeStart = Arrays.copyOf(edgeStart, states + 1);
+		edgeChars = Arrays.copyOf(edgeChars, edges);
+		edgeTargets = Arrays.copyOf(edgeTargets, edges);
+		edgeRanks = Arrays.copyOf(edgeRanks, edges);
+		finals = Arrays.copyOf(finals, states);
+		phrases = null;
+		register = null;
+		pathChars = null;
+		pathTargets = null;
+		pathSizes = null;
+		pathFinals = null;
+
+		entryStart = new int[distinct + 1];
+		int[] entryRanks = new int[entryPhrases.length];
+		for (int i = 0; i < entryPhrases.length; i++) {
+			if (entryPhrases[i] != null) {
+				entryRanks[i] = Arrays.binarySearch(sorted, 0, distinct, entryPhrases[i]);
+				entryStart[entryRanks[i] + 1]++;
+			}
+		}
+		for (int p = 0; p < distinct; p++) {
+			entryStart[p + 1] += entryStart[p];
+		}
+		entries = new int[entryStart[distinct]];
+		int[] next = Arrays.copyOf(entryStart, distinct);
+		for (int i = 0; i < entryPhrases.length; i++) {
+			if (entryPhrases[i] != null) {
+				entries[next[entryRanks[i]]++] = i;
+			}
+		}
+	}
+
+	/**
+	 * Adds a phrase following the previous one in sorted order, minimizing
+	 * the states of the path of the previous phrase it does not share
+	 */
+	private void add(String previous, String phrase) {
+		int common = 0;
+		int max = Math.min(previous.length(), phrase.length());
+		while (common < max && previous.charAt(common) == phrase.charAt(common)) {
+			common++;
+		}
+		for (int d = previous.length(); d > common; d--) {
+			pathTargets[d - 1][pathSizes[d - 1] - 1] = minimize(d);
+		}
+		if (phrase.length() >= pathSizes.length) {
+			int length = Math.max(2 * pathSizes.length, phrase.length() + 1);
+			pathChars = Arrays.copyOf(pathChars, length);
+			pathTargets = Arrays.copyOf(pathTargets, length);
+			pathSizes = Arrays.copyOf(pathSizes, length);
+			pathFinals = Arrays.copyOf(pathFinals, length);
+		}
+		if (previous.isEmpty()) {
+			// the initial state
+			pathSizes[0] = 0;
+			pathFinals[0] = false;
+		}
+		for (int d = common; d < phrase.length(); d++) {
+			if (pathChars[d] == null) {
+				pathChars[d] = new char[4];
+				pathTargets[d] = new int[4];
+			} else if (pathSizes[d] == pathChars[d].length) {
+				pathChars[d] = Arrays.copyOf(pathChars[d], 2 * pathSizes[d]);
+				pathTargets[d] = Arrays.copyOf(pathTargets[d], 2 * pathSizes[d]);
+			}
+			pathChars[d][pathSizes[d]] = phrase.charAt(d);
+			pathTargets[d][pathSizes[d]] = -1;
+			pathSizes[d]++;
+			pathSizes[d + 1] = 0;
+			pathFinals[d + 1] = false;
+		}
+		pathFinals[phrase.length()] = true;
+	}
+
+	/**
+	 * Replaces the state of the path at a depth by the registered state
+	 * having the same transitions, registering it if there is none
+	 *
+	 * @return the registered state
+	 */
+	private int minimize(int depth) {
+		char[] chars = pathChars[depth];
+		int[] targets = pathTargets[depth];
+		int size = pathSizes[depth];
+		boolean isFinal = pathFinals[depth];
+		int hash = isFinal ? 1 : 0;
+		for (int k = 0; k < size; k++) {
+			hash = 31 * (31 * hash + chars[k]) + targets[k];
+		}
+		hash *= 0x9E3779B9;
+		int mask = register.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (register[slot] >= 0) {
+			int state = register[slot];
+			if (equals(state, chars, targets, size, isFinal)) {
+				return state;
+			}
+			slot = (slot + 1) & mask;
+		}
+		int state = newState(chars, targets, size, isFinal);
+		register[slot] = state;
+		if (++registered * 2 > register.length) {
+			growRegister();
+		}
+		return state;
+	}
+
+	private boolean equals(int state, char[] chars, int[] targets, int size, boolean isFinal) {
+		if (finals[state] != isFinal || edgeStart[state + 1] - edgeStart[state] != size) {
+			return false;
+		}
+		for (int k = 0, e = edgeStart[state]; k < size; k++, e++) {
+			if (edgeChars[e] != chars[k] || edgeTargets[e] != targets[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int newState(char[] chars, int[] targets, int size, boolean isFinal) {
+		if (states + 2 > edgeStart.length) {
+			int length = 2 * edgeStart.length;
+			edgeStart = Arrays.copyOf(edgeStart, length);
+			finals = Arrays.copyOf(finals, length);
+			phrases = Arrays.copyOf(phrases, length);
+		}
+		if (edges + size > edgeChars.length) {
+			int length = Math.max(2 * edgeChars.length, edges + size);
+			edgeChars = Arrays.copyOf(edgeChars, length);
+			edgeTargets = Arrays.copyOf(edgeTargets, length);
+			edgeRanks = Arrays.copyOf(edgeRanks, length);
+		}
+		int state = states++;
+		edgeStart[state] = edges;
+		finals[state] = isFinal;
+		int count = isFinal ? 1 : 0;
+		for (int k = 0; k < size; k++) {
+			edgeChars[edges] = chars[k];
+			edgeTargets[edges] = targets[k];
+			edgeRanks[edges] = count;
+			count += phrases[targets[k]];
+			edges++;
+		}
+		phrases[state] = count;
+		// the end of the transitions, until the next state is added
+		edgeStart[state + 1] = edges;
+		return state;
+	}
+
+	private void growRegister() {
+		int[] old = register;
+		register = new int[old.length * 2];
+		Arrays.fill(register, -1);
+		int mask = register.length - 1;
+		for (int state : old) {
+			if (state >= 0) {
+				int hash = finals[state] ? 1 : 0;
+				for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+					hash = 31 * (31 * hash + edgeChars[e]) + edgeTargets[e];
+				}
+				hash *= 0x9E3779B9;
+				int slot = (hash ^ (hash >>> 16)) & mask;
+				while (register[slot] >= 0) {
+					slot = (slot + 1) & mask;
+				}
+				register[slot] = state;
+			}
+		}
+	}
+
+	int initialState() {
+		return initialState;
+	}
+
+	/**
+	 * @return the transition from a state by a char, or -1
+	 */
+	int edge(int state, char c) {
+		int index = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], c);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * @return the state a transition leads to
+	 */
+	int target(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * @return the number to add to the number of the phrase being read when
+	 * it goes through a transition
+	 */
+	int rank(int edge) {
+		return edgeRanks[edge];
+	}
+
+	/**
+	 * @return true if a phrase ends in a state
+	 */
+	boolean isFinal(int state) {
+		return finals[state];
+	}
+
+	/**
+	 * @return the position of the first entry having a phrase, see
+	 * {@link #entry(int)}
+	 */
+	int entriesStart(int phrase) {
+		return entryStart[phrase];
+	}
+
+	int entriesEnd(int phrase) {
+		return entryStart[phrase + 1];
+	}
+
+	/**
+	 * @return the index of the compiled entry at a position
+	 */
+	int entry(int position) {
+		return entries[position];
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	int size() {
+		return states;
+	}
+
+	/**
+	 * @return the number of bytes taken by the arrays of the automaton
+	 */
+	long footprint() {
+		return 16 + 4L * edgeStart.length + 16 + 2L * edgeChars.length
+				+ 16 + 4L * edgeTargets.length + 16 + 4L * edgeRanks.length
+				+ 16 + finals.length + 16 + 4L * entryStart.length + 16 + 4L * entries.length;
+	}
+}
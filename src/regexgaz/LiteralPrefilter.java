@@ -0,0 +1,246 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Skips the regular expression entries that cannot match a text. For each
+ * entry, a literal factor that every match must contain is extracted from
+ * the pattern (e.g. "Buen" for <code>Buen[oa]s? d[ií]as</code>). A text is
+ * scanned once for all the factors with an Aho-Corasick automaton, and the
+ * pattern of an entry is then only run around the occurrences of its factor,
+ * see {@link EntryMatcher}.
+ * <p>
+ * Instances are immutable once built, so they can be shared by several
+ * gazetteers.
+ */
+final class LiteralPrefilter {
+
+	/**
+	 * the factors shorter than this are too frequent to be worth indexing
+	 */
+	static final int MIN_FACTOR_LENGTH = 2;
+
+	/**
+	 * the factor id and the maximum match length of the indexed entries
+	 */
+	private final Map<CompiledEntry, int[]> indexedEntries = new HashMap<>();
+
+	private final List<String> factors = new ArrayList<>();
+
+	private final Node root = new Node();
+
+	/**
+	 * Builds the prefilter of a set of entries. The entries without any
+	 * usable factor are left out, see {@link #handles(CompiledEntry)}.
+	 */
+	LiteralPrefilter(List<CompiledEntry> entries) {
+		Map<String, Integer> factorIds = new HashMap<>();
+		for (CompiledEntry entry : entries) {
+			RegexParser.Node tree = entry.getTree();
+			if (tree == null) {
+				continue;
+			}
+			String factor = requiredFactor(tree);
+			if (factor.length() < MIN_FACTOR_LENGTH) {
+				continue;
+			}
+			Integer id = factorIds.get(factor);
+			if (id == null) {
+				id = factors.size();
+				factors.add(factor);
+				factorIds.put(factor, id);
+				addFactor(factor, id);
+			}
+			indexedEntries.put(entry, new int[]{id, tree.maxLength()});
+		}
+		computeFailureLinks();
+	}
+
+	/**
+	 * @return true if the entry has a factor, i.e. its matches can be found
+	 * with {@link #matcher}
+	 */
+	boolean handles(CompiledEntry entry) {
+		return indexedEntries.containsKey(entry);
+	}
+
+	/**
+	 * @return the number of entries that have a factor
+	 */
+	int size() {
+		return indexedEntries.size();
+	}
+
+	/**
+	 * Scans a text and collects the end offsets of the occurrences of the
+	 * factors, by factor id.
+	 */
+	Candidates scan(CharSequence text) {
+		Candidates candidates = new Candidates();
+		Node node = root;
+		int length = text.length();
+		for (int i = 0; i < length; i++) {
+			char c = text.charAt(i);
+			while (node != root && node.next(c) == null) {
+				node = node.failure;
+			}
+			node = node.next(c);
+			if (node == null) {
+				node = root;
+				continue;
+			}
+			for (Node found = node.factor >= 0 ? node : node.output; found != null; found = found.output) {
+				candidates.add(found.factor, i + 1);
+			}
+		}
+		return candidates.sort();
+	}
+
+	/**
+	 * Returns the matches of an entry that has a factor
+	 *
+	 * @param entry an entry handled by this prefilter
+	 * @param text the text given to {@link #scan}
+	 * @param candidates the result of the scan of the text
+	 */
+	EntryMatcher matcher(CompiledEntry entry, CharSequence text, Candidates candidates) {
+		int[] indexed = indexedEntries.get(entry);
+		return new EntryMatcher(entry.getRegex(), text, indexed[1],
+				candidates.getOffsets(indexed[0]));
+	}
+
+	/**
+	 * Returns the matches of an indexed entry starting in [from, to[,
+	 * followed by some of the next ones, see
+	 * {@link MultiPatternAutomaton#matcher(int, CharSequence, Candidates, int, int)}
+	 */
+	EntryMatcher matcher(CompiledEntry entry, CharSequence text, Candidates candidates,
+			int from, int to) {
+		int[] indexed = indexedEntries.get(entry);
+		return new EntryMatcher(entry.getRegex(), text, indexed[1],
+				candidates.getOffsets(indexed[0], from,
+						(int) Math.min(Integer.MAX_VALUE, (long) to + indexed[1])), from);
+	}
+
+	/**
+	 * Extracts the longest literal that every match of an expression contains
+	 *
+	 * @return the literal, possibly empty
+	 */
+	static String requiredFactor(RegexParser.Node tree) {
+		List<String> factors = new ArrayList<>();
+		StringBuilder run = new StringBuilder();
+		collectFactors(tree, factors, run);
+		factors.add(run.toString());
+		String longest = "";
+		for (String factor : factors) {
+			if (factor.length() > longest.length()) {
+				longest = factor;
+			}
+		}
+		return longest;
+	}
+
+	/**
+	 * Collects the sequences of single characters that every match of a node
+	 * contains
+	 *
+	 * @param run the sequence being read, which the node may extend
+	 */
+	private static void collectFactors(RegexParser.Node node, List<String> factors, StringBuilder run) {
+		if (node instanceof RegexParser.Atom) {
+			int[] codePoints = ((RegexParser.Atom) node).set.enumerate();
+			if (codePoints != null && codePoints.length == 1) {
+				run.appendCodePoint(codePoints[0]);
+			} else {
+				endRun(factors, run);
+			}
+		} else if (node instanceof RegexParser.Sequence) {
+			for (RegexParser.Node item : ((RegexParser.Sequence) node).items) {
+				collectFactors(item, factors, run);
+			}
+		} else if (node instanceof RegexParser.Repeat) {
+			RegexParser.Repeat repeat = (RegexParser.Repeat) node;
+			endRun(factors, run);
+			if (repeat.min > 0) {
+				// the first repetition is always there
+				StringBuilder inner = new StringBuilder();
+				collectFactors(repeat.node, factors, inner);
+				endRun(factors, inner);
+			}
+		} else if (node instanceof RegexParser.Alternation) {
+			endRun(factors, run);
+		}
+		// the assertions do not consume anything, the run goes on
+	}
+
+	private static void endRun(List<String> factors, StringBuilder run) {
+		if (run.length() > 0) {
+			factors.add(run.toString());
+			run.setLength(0);
+		}
+	}
+
+	/*---------------- Aho-Corasick automaton ----------------*/
+	private void addFactor(String factor, int id) {
+		Node node = root;
+		for (int i = 0; i < factor.length(); i++) {
+			char c = factor.charAt(i);
+			Node next = node.next(c);
+			if (next == null) {
+				next = new Node();
+				node.transitions.put(c, next);
+			}
+			node = next;
+		}
+		node.factor = id;
+	}
+
+	private void computeFailureLinks() {
+		LinkedList<Node> queue = new LinkedList<>();
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			Node node = queue.removeFirst();
+			RegexGazetteer.CharMap transitions = node.transitions;
+			if (transitions.itemsKeys == null) {
+				continue;
+			}
+			for (int i = 0; i < transitions.size; i++) {
+				char c = transitions.itemsKeys[i];
+				Node child = (Node) transitions.itemsObjs[i];
+				Node failure = node.failure;
+				while (failure != null && failure.next(c) == null) {
+					failure = failure.failure;
+				}
+				child.failure = failure == null ? root : failure.next(c);
+				child.output = child.failure.factor >= 0 ? child.failure : child.failure.output;
+				queue.add(child);
+			}
+		}
+	}
+
+	private static final class Node {
+
+		final RegexGazetteer.CharMap transitions = new RegexGazetteer.CharMap();
+
+		Node failure;
+
+		/**
+		 * the nearest node along the failure links that ends a factor
+		 */
+		Node output;
+
+		/**
+		 * the id of the factor ending in this node, or -1
+		 */
+		int factor = -1;
+
+		Node next(char c) {
+			return (Node) transitions.get(c);
+		}
+	}
+}
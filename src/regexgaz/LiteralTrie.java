@@ -0,0 +1,468 @@
+package regexgaz;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The trie of the literal entries of a gazetteer, with the Aho-Corasick
+ * failure and output links matching all of them in a single pass over a
+ * text. The states are numbered from 0, the initial state, and held in
+ * arrays indexed by state: the transitions of a state are a range of the
+ * edge arrays, sorted by char, and the entries ending in a state are a range
+ * of the indexes of the compiled entries, in increasing order. There is no
+ * object per state, so the trie of millions of entries takes a few arrays.
+ * <p>
+ * As in the text, where each sequence of whitespace is read as a single
+ * space, the whitespace of an entry is a space and a sequence of it counts
+ * for one transition.
+ * <p>
+ * The trie is built at once from the phrases of the entries, or from the
+ * transitions read from a snapshot, and is never modified afterwards.
+ */
+final class LiteralTrie {
+
+	static final int INITIAL_STATE = 0;
+
+	/**
+	 * the state returned when there is none
+	 */
+	static final int NO_STATE = -1;
+
+	/**
+	 * the transitions of state s are the edges from edgeStart[s] to
+	 * edgeStart[s + 1]
+	 */
+	private final int[] edgeStart;
+
+	private final char[] edgeChars;
+
+	private final int[] edgeTargets;
+
+	/**
+	 * the state of the longest proper suffix of the phrase leading to each
+	 * state that is also a prefix of a phrase, or NO_STATE for the initial
+	 * state
+	 */
+	private final int[] failure;
+
+	/**
+	 * the nearest state along the failure links of each state that has
+	 * entries ending in it, or NO_STATE
+	 */
+	private final int[] output;
+
+	/**
+	 * the number of transitions from the initial state to each state
+	 */
+	private final int[] depth;
+
+	/**
+	 * the entries ending in state s are the ones from entryStart[s] to
+	 * entryStart[s + 1]
+	 */
+	private final int[] entryStart;
+
+	private final int[] entries;
+
+	/**
+	 * Builds the trie of some transitions and computes its links
+	 *
+	 * @param edgeStart the start of the transitions of each state in the edge
+	 * arrays, followed by their length
+	 * @param edgeChars the chars of the transitions, sorted for each state
+	 * @param edgeTargets the target states of the transitions
+	 * @param entryStates the final state of each compiled entry, by entry
+	 * index, or NO_STATE for the entries that are not literal
+	 */
+	LiteralTrie(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] entryStates) {
+		this.edgeStart = edgeStart;
+		this.edgeChars = edgeChars;
+		this.edgeTargets = edgeTargets;
+		int states = edgeStart.length - 1;
+		entryStart = new int[states + 1];
+		int count = 0;
+		for (int state : entryStates) {
+			if (state != NO_STATE) {
+				entryStart[state + 1]++;
+				count++;
+			}
+		}
+		for (int s = 0; s < states; s++) {
+			entryStart[s + 1] += entryStart[s];
+		}
+		entries = new int[count];
+		int[] next = Arrays.copyOf(entryStart, states);
+		for (int i = 0; i < entryStates.length; i++) {
+			if (entryStates[i] != NO_STATE) {
+				entries[next[entryStates[i]]++] = i;
+			}
+		}
+		failure = new int[states];
+		output = new int[states];
+		depth = new int[states];
+		computeLinks();
+	}
+
+	/**
+	 * Computes the failure and output links and the depth of the states,
+	 * visiting them breadth first
+	 */
+	private void computeLinks() {
+		int[] queue = new int[failure.length];
+		int head = 0;
+		int tail = 0;
+		failure[INITIAL_STATE] = NO_STATE;
+		output[INITIAL_STATE] = NO_STATE;
+		queue[tail++] = INITIAL_STATE;
+		while (head < tail) {
+			int state = queue[head++];
+			for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+				char c = edgeChars[e];
+				int child = edgeTargets[e];
+				int f = failure[state];
+				while (f != NO_STATE && next(f, c) == NO_STATE) {
+					f = failure[f];
+				}
+				int childFailure = f == NO_STATE ? INITIAL_STATE : next(f, c);
+				failure[child] = childFailure;
+				output[child] = isFinal(childFailure) ? childFailure : output[childFailure];
+				depth[child] = depth[state] + 1;
+				queue[tail++] = child;
+			}
+		}
+	}
+
+	/**
+	 * @return the state reached from a state by a char, or NO_STATE
+	 */
+	int next(int state, char c) {
+		int index = Arrays.binarySearch(edgeChars, edgeStart[state], edgeStart[state + 1], c);
+		return index < 0 ? NO_STATE : edgeTargets[index];
+	}
+
+	/**
+	 * @return the state reached by a phrase, or NO_STATE if it is not the
+	 * prefix of an entry
+	 */
+	int state(CharSequence phrase) {
+		int state = INITIAL_STATE;
+		boolean space = false;
+		for (int i = 0; i < phrase.length() && state != NO_STATE; i++) {
+			char c = phrase.charAt(i);
+			if (RegexGazetteer.isSpace(c)) {
+				if (space) {
+					continue;
+				}
+				c = ' ';
+				space = true;
+			} else {
+				space = false;
+			}
+			state = next(state, c);
+		}
+		return state;
+	}
+
+	int failure(int state) {
+		return failure[state];
+	}
+
+	int output(int state) {
+		return output[state];
+	}
+
+	int depth(int state) {
+		return depth[state];
+	}
+
+	/**
+	 * @return true if some entries end in a state
+	 */
+	boolean isFinal(int state) {
+		return entryStart[state] < entryStart[state + 1];
+	}
+
+	/**
+	 * @return the position of the first entry ending in a state, see
+	 * {@link #entry(int)}
+	 */
+	int entriesStart(int state) {
+		return entryStart[state];
+	}
+
+	int entriesEnd(int state) {
+		return entryStart[state + 1];
+	}
+
+	/**
+	 * @return the index of the compiled entry at a position
+	 */
+	int entry(int position) {
+		return entries[position];
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	int size() {
+		return failure.length;
+	}
+
+	/**
+	 * @return the number of bytes taken by the arrays of the trie
+	 */
+	long footprint() {
+		return bytes(edgeStart) + bytes(edgeChars) + bytes(edgeTargets) + bytes(failure)
+				+ bytes(output) + bytes(depth) + bytes(entryStart) + bytes(entries);
+	}
+
+	private static long bytes(int[] array) {
+		return 16 + 4L * array.length;
+	}
+
+	private static long bytes(char[] array) {
+		return 16 + 2L * array.length;
+	}
+
+	int[] edgeStart() {
+		return edgeStart;
+	}
+
+	char[] edgeChars() {
+		return edgeChars;
+	}
+
+	int[] edgeTargets() {
+		return edgeTargets;
+	}
+
+	/**
+	 * Returns a GML (Graph Modeling Language) representation of the trie,
+	 * the final states being labelled with the indexes of their entries
+	 */
+	String toGML() {
+		StringBuilder nodes = new StringBuilder();
+		StringBuilder edges = new StringBuilder();
+		for (int s = 0; s < size(); s++) {
+			nodes.append("node[ id ").append(s).append(" label \"").append(s);
+			if (isFinal(s)) {
+				nodes.append(",F\\n").append(Arrays.toString(
+						Arrays.copyOfRange(entries, entryStart[s], entryStart[s + 1])));
+			}
+			nodes.append("\"  ]\n");
+			for (int e = edgeStart[s]; e < edgeStart[s + 1]; e++) {
+				edges.append("\nedge [ source ").append(s).append(" target ").append(edgeTargets[e])
+						.append(" label \"'").append(edgeChars[e]).append("'\" ]\n");
+			}
+		}
+		return "graph[ \ndirected 1\n" + nodes + edges + "]\n";
+	}
+
+	/**
+	 * Builds the trie of the literal entries of a compiled-entry table in a
+	 * single pass over their phrases: the entries read from a state are a
+	 * range of the entries, which is sorted by the char following the state
+	 * to split it into the ranges of the children of the state, the entries
+	 * ending in the state coming first. The states are
+	 * numbered breadth first, and the transitions of each state are written
+	 * at once when it is reached, so that nothing is reallocated but the
+	 * arrays growing with the number of states.
+	 */
+	static LiteralTrie build(List<CompiledEntry> compiledEntries) {
+		String[] entryPhrases = phrases(compiledEntries);
+		int count = 0;
+		int length = 0;
+		for (String phrase : entryPhrases) {
+			if (phrase != null) {
+				count++;
+				length += phrase.length() + 2;
+			}
+		}
+		// the phrases of the literal entries laid end to end, each followed
+		// by the two halves of its entry index, whose position is set in ends
+		char[] chars = new char[length];
+		long[] ends = new long[(length >> 6) + 1];
+		// the char following a state, plus one or 0 at the end of the phrase,
+		// in the high half and the start of the phrase in the low one, the
+		// entries read from a state being a range of the keys
+		long[] keys = new long[count];
+		count = 0;
+		length = 0;
+		for (int i = 0; i < entryPhrases.length; i++) {
+			String phrase = entryPhrases[i];
+			if (phrase != null) {
+				keys[count++] = length;
+				phrase.getChars(0, phrase.length(), chars, length);
+				length += phrase.length();
+				ends[length >> 6] |= 1L << length;
+				chars[length++] = (char) (i >>> 16);
+				chars[length++] = (char) i;
+			}
+		}
+		entryPhrases = null;
+		int capacity = 16;
+		// the range of the keys read from each state, and its depth
+		int[] rangeStart = new int[capacity];
+		int[] rangeEnd = new int[capacity];
+		int[] depths = new int[capacity];
+		int[] edgeStart = new int[capacity + 1];
+		char[] edgeChars = new char[capacity];
+		int[] edgeTargets = new int[capacity];
+		int[] entryStates = new int[compiledEntries.size()];
+		Arrays.fill(entryStates, NO_STATE);
+		rangeEnd[INITIAL_STATE] = count;
+		int states = 1;
+		int edges = 0;
+		for (int state = 0; state < states; state++) {
+			edgeStart[state] = edges;
+			int depth = depths[state];
+			int k = rangeStart[state];
+			int end = rangeEnd[state];
+			for (int j = k; j < end; j++) {
+				int position = (int) keys[j] + depth;
+				long c = (ends[position >> 6] & 1L << position) != 0 ? 0 : chars[position] + 1;
+				keys[j] = c << 32 | (int) keys[j];
+			}
+			if (end - k > 1) {
+				Arrays.sort(keys, k, end);
+			}
+			while (k < end && keys[k] >>> 32 == 0) {
+				int position = (int) keys[k++] + depth;
+				entryStates[chars[position] << 16 | chars[position + 1]] = state;
+			}
+			while (k < end) {
+				long c = keys[k] >>> 32;
+				int next = k + 1;
+				while (next < end && keys[next] >>> 32 == c) {
+					next++;
+				}
+				if (states == rangeStart.length) {
+					capacity = 2 * capacity;
+					rangeStart = Arrays.copyOf(rangeStart, capacity);
+					rangeEnd = Arrays.copyOf(rangeEnd, capacity);
+					depths = Arrays.copyOf(depths, capacity);
+					edgeStart = Arrays.copyOf(edgeStart, capacity + 1);
+					edgeChars = Arrays.copyOf(edgeChars, capacity);
+					edgeTargets = Arrays.copyOf(edgeTargets, capacity);
+				}
+				rangeStart[states] = k;
+				rangeEnd[states] = next;
+				depths[states] = depth + 1;
+				edgeChars[edges] = (char) (c - 1);
+				edgeTargets[edges++] = states++;
+				k = next;
+			}
+		}
+		edgeStart[states] = edges;
+		return new LiteralTrie(Arrays.copyOf(edgeStart, states + 1), Arrays.copyOf(edgeChars, edges),
+				Arrays.copyOf(edgeTargets, edges), entryStates);
+	}
+
+	/**
+	 * @return the phrase of each literal entry of a compiled-entry table, by
+	 * entry index, or null for the entries that are not literal
+	 */
+	static String[] phrases(List<CompiledEntry> compiledEntries) {
+		String[] phrases = new String[compiledEntries.size()];
+		for (int i = 0; i < phrases.length; i++) {
+			CompiledEntry entry = compiledEntries.get(i);
+			if (entry.isLiteral()) {
+				phrases[i] = phrase(entry.getEntry());
+			}
+		}
+		return phrases;
+	}
+
+	/**
+	 * @return an entry with its whitespace read as in the text: each
+	 * sequence of it as a single space
+	 */
+	static String phrase(String entry) {
+		StringBuilder phrase = null;
+		boolean space = false;
+		for (int i = 0; i < entry.length(); i++) {
+			char c = entry.charAt(i);
+			boolean isSpace = RegexGazetteer.isSpace(c);
+			if (phrase == null && isSpace && (c != ' ' || space)) {
+				phrase = new StringBuilder(entry.length());
+				phrase.append(entry, 0, i);
+			}
+			if (phrase != null && !(isSpace && space)) {
+				phrase.append(isSpace ? ' ' : c);
+			}
+			space = isSpace;
+		}
+		return phrase == null ? entry : phrase.toString();
+	}
+
+	/**
+	 * @return the distinct phrases of some entries, sorted
+	 *
+	 * @param phrases the phrases, some of which may be null
+	 */
+	static String[] sortedPhrases(String[] phrases) {
+		int count = 0;
+		for (String phrase : phrases) {
+			if (phrase != null) {
+				count++;
+			}
+		}
+		String[] sorted = new String[count];
+		count = 0;
+		for (String phrase : phrases) {
+			if (phrase != null) {
+				sorted[count++] = phrase;
+			}
+		}
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for (int i = 0; i < sorted.length; i++) {
+			if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, distinct);
+	}
+
+	/**
+	 * The transitions of a trie read from a snapshot, to which the entries
+	 * are attached once they are compiled
+	 */
+	static final class Transitions {
+
+		private final int[] edgeStart;
+
+		private final char[] edgeChars;
+
+		private final int[] edgeTargets;
+
+		/**
+		 * @param edgeStart the start of the transitions of each state, as
+		 * returned by {@link LiteralTrie#edgeStart()}
+		 * @param edgeChars the chars of the transitions, sorted for each state
+		 * @param edgeTargets the target states of the transitions
+		 */
+		Transitions(int[] edgeStart, char[] edgeChars, int[] edgeTargets) {
+			this.edgeStart = edgeStart;
+			this.edgeChars = edgeChars;
+			this.edgeTargets = edgeTargets;
+		}
+
+		/**
+		 * @return the number of states
+		 */
+		int size() {
+			return edgeStart.length - 1;
+		}
+
+		/**
+		 * Builds the trie
+		 *
+		 * @param entryStates the final state of each compiled entry, by entry
+		 * index, or NO_STATE for the entries that are not literal
+		 */
+		LiteralTrie build(int[] entryStates) {
+			return new LiteralTrie(edgeStart, edgeChars, edgeTargets, entryStates);
+		}
+	}
+}
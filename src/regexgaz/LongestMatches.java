@@ -0,0 +1,168 @@
+package regexgaz;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps the longest matches of each annotation type, the same ones as adding
+ * the matches one after the other to an annotation set would: a match is
+ * dropped if an annotation of its type covers it, otherwise the annotations
+ * of its type it overlaps are removed and it is added. The matches are
+ * resolved in memory so that the annotation set is only written with the
+ * matches that are kept.
+ * <p>
+ * The annotations that were in the set before are taken into account: they
+ * may cover a match or be replaced by one. The set is then only read for the
+ * types it has annotations of. Without a set, the matches are only resolved
+ * between themselves.
+ */
+final class LongestMatches {
+
+	/**
+	 * The matches of one annotation type that are kept so far. They do not
+	 * overlap each other, so that there is at most one of them starting at
+	 * each offset.
+	 */
+	private static final class TypeMatches {
+
+		/**
+		 * the index of the kept matches, by start offset
+		 */
+		final TreeMap<Integer, Integer> byStart = new TreeMap<>();
+
+		/**
+		 * true if the annotation set had annotations of this type
+		 */
+		final boolean existing;
+
+		TypeMatches(boolean existing) {
+			this.existing = existing;
+		}
+	}
+
+	private final AnnotationSet annotationSet;
+
+	private final Map<String, TypeMatches> types = new HashMap<>();
+
+	/**
+	 * the annotations of the set replaced by matches
+	 */
+	private final Set<Annotation> replaced = new HashSet<>();
+
+	/**
+	 * the matches, in the order they were added: start, end and entry index
+	 */
+	private int[] matches = new int[3 * 64];
+
+	private boolean[] kept = new boolean[64];
+
+	private int size;
+
+	/**
+	 * @param annotationSet the annotations the matches are to be added to, or
+	 * null
+	 */
+	LongestMatches(AnnotationSet annotationSet) {
+		this.annotationSet = annotationSet;
+	}
+
+	/**
+	 * Adds a match, replacing the matches and the annotations of its type it
+	 * overlaps unless one of them covers it
+	 */
+	void add(int entryIndex, String type, int start, int end) {
+		TypeMatches typeMatches = types.get(type);
+		if (typeMatches == null) {
+			typeMatches = new TypeMatches(annotationSet != null && !annotationSet.get(type).isEmpty());
+			types.put(type, typeMatches);
+		}
+		if (isCovered(typeMatches, type, start, end)) {
+			return;
+		}
+		// the kept matches overlapping this one: the one starting before it
+		// and ending after its start, and the ones starting inside it
+		Map.Entry<Integer, Integer> before = typeMatches.byStart.lowerEntry(start);
+		if (before != null && matches[3 * before.getValue() + 1] > start) {
+			kept[before.getValue()] = false;
+			typeMatches.byStart.remove(before.getKey());
+		}
+		Iterator<Integer> inside = typeMatches.byStart.subMap(start, end).values().iterator();
+		while (inside.hasNext()) {
+			kept[inside.next()] = false;
+			inside.remove();
+		}
+		if (typeMatches.existing) {
+			for (Annotation annotation : annotationSet.get(type, (long) start, (long) end)) {
+				replaced.add(annotation);
+			}
+		}
+		if (size == kept.length) {
+			matches = Arrays.copyOf(matches, 6 * size);
+			kept = Arrays.copyOf(kept, 2 * size);
+		}
+		matches[3 * size] = start;
+		matches[3 * size + 1] = end;
+		matches[3 * size + 2] = entryIndex;
+		kept[size] = true;
+		typeMatches.byStart.put(start, size);
+		size++;
+	}
+
+	private boolean isCovered(TypeMatches typeMatches, String type, int start, int end) {
+		// a kept match covering this one would be the last one starting at
+		// or before its start, as they do not overlap
+		Map.Entry<Integer, Integer> floor = typeMatches.byStart.floorEntry(start);
+		if (floor != null && matches[3 * floor.getValue() + 1] >= end) {
+			return true;
+		}
+		if (typeMatches.existing) {
+			for (Annotation annotation : annotationSet.getCovering(type, (long) start, (long) end)) {
+				if (!replaced.contains(annotation)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the annotations of the set that were replaced by matches, to be
+	 * removed from it
+	 */
+	Set<Annotation> getReplaced() {
+		return replaced;
+	}
+
+	/**
+	 * @return the number of matches added
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the k-th match added is kept
+	 */
+	boolean isKept(int k) {
+		return kept[k];
+	}
+
+	int getStart(int k) {
+		return matches[3 * k];
+	}
+
+	int getEnd(int k) {
+		return matches[3 * k + 1];
+	}
+
+	int getEntryIndex(int k) {
+		return matches[3 * k + 2];
+	}
+}
@@ -35,6 +35,10 @@ import java.util.Map;
  * is a string and it is intended to represent a comma separated list). An
  * optional features field stores arbitrary features as part of the lookup
  * annotation. This can be used to set meta-data for a gazetteer entry.
+ * <p>
+ * The string representation of a lookup, used by equals() and hashCode(), is
+ * computed the first time it is needed and then cached: a lookup must not be
+ * modified once it has been compared or added to a set.
  */
 public class Lookup implements Serializable {
 
@@ -92,12 +96,24 @@ public class Lookup implements Serializable {
 	 */
 	public String annotationType;
 
+	/**
+	 * the cached string representation, which caches its hash code
+	 */
+	private transient String description;
+
 	/**
 	 * Returns a string representation of this lookup in the format This method
 	 * is used in equals().
 	 */
 	@Override
 	public String toString() {
+		if (description == null) {
+			description = describe();
+		}
+		return description;
+	}
+
+	private String describe() {
 		StringBuilder b = new StringBuilder();
 		boolean hasArbitaryFeatures = false;
 		if (null != features) {
@@ -135,8 +151,11 @@ public class Lookup implements Serializable {
 	 */
 	@Override
 	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
 		if (obj instanceof Lookup) {
-			return obj.toString().equals(toString());
+			return obj.hashCode() == hashCode() && obj.toString().equals(toString());
 		} else {
 			return false;
 		}
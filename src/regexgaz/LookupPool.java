@@ -0,0 +1,147 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares the {@link Lookup} instances of the entries of a gazetteer: the
+ * entries of a list having the same features, or no features, get the same
+ * lookup, and so do the lists having the same types. The strings of the
+ * lookups, the names and values of the features included, are interned, so
+ * that a string repeated across the lists is held once.
+ * <p>
+ * It is only used while the gazetteer is initialised, and is shared by the
+ * threads compiling the lists at once: when two of them create the same
+ * lookup, feature map or string at the same time, the first one stored is
+ * the one both get.
+ */
+final class LookupPool {
+
+	/**
+	 * The fields of a lookup, the features being the interned copy of the
+	 * features of an entry, compared by identity
+	 */
+	private static final class Key {
+
+		final String list;
+
+		final String majorType;
+
+		final String minorType;
+
+		final String languages;
+
+		final String annotationType;
+
+		final Map<String, Object> features;
+
+		private final int hash;
+
+		Key(String list, String majorType, String minorType, String languages,
+				String annotationType, Map<String, Object> features) {
+			this.list = list;
+			this.majorType = majorType;
+			this.minorType = minorType;
+			this.languages = languages;
+			this.annotationType = annotationType;
+			this.features = features;
+			hash = Objects.hash(list, majorType, minorType, languages, annotationType,
+					System.identityHashCode(features));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) o;
+			return hash == key.hash && features == key.features
+					&& Objects.equals(list, key.list)
+					&& Objects.equals(majorType, key.majorType)
+					&& Objects.equals(minorType, key.minorType)
+					&& Objects.equals(languages, key.languages)
+					&& Objects.equals(annotationType, key.annotationType);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final Map<String, String> strings = new ConcurrentHashMap<>();
+
+	/**
+	 * the interned copies of the features of the entries, by their names and
+	 * values in iteration order, so that the features of the annotations keep
+	 * the order of the entry
+	 */
+	private final Map<List<Object>, Map<String, Object>> featureMaps = new ConcurrentHashMap<>();
+
+	private final Map<Key, Lookup> lookups = new ConcurrentHashMap<>();
+
+	/**
+	 * @return the lookup having these fields, created if there is none yet
+	 */
+	Lookup get(String list, String majorType, String minorType, String languages,
+			String annotationType, Map<String, Object> features) {
+		Key key = new Key(intern(list), intern(majorType), intern(minorType), intern(languages),
+				intern(annotationType == null ? Constants.LOOKUP : annotationType),
+				intern(features));
+		Lookup lookup = lookups.get(key);
+		if (lookup == null) {
+			lookup = new Lookup(key.list, key.majorType, key.minorType, key.languages,
+					key.annotationType);
+			lookup.features = key.features;
+			Lookup stored = lookups.putIfAbsent(key, lookup);
+			if (stored != null) {
+				lookup = stored;
+			}
+		}
+		return lookup;
+	}
+
+	String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+		String interned = strings.putIfAbsent(string, string);
+		return interned == null ? string : interned;
+	}
+
+	private Map<String, Object> intern(Map<String, Object> features) {
+		if (features == null) {
+			return null;
+		}
+		List<Object> namesAndValues = new ArrayList<>(2 * features.size());
+		for (Map.Entry<String, Object> feature : features.entrySet()) {
+			namesAndValues.add(feature.getKey());
+			namesAndValues.add(feature.getValue());
+		}
+		Map<String, Object> interned = featureMaps.get(namesAndValues);
+		if (interned == null) {
+			interned = new LinkedHashMap<>(features.size() * 4 / 3 + 1);
+			for (Map.Entry<String, Object> feature : features.entrySet()) {
+				Object value = feature.getValue();
+				interned.put(intern(feature.getKey()),
+						value instanceof String ? intern((String) value) : value);
+			}
+			Map<String, Object> stored = featureMaps.putIfAbsent(namesAndValues, interned);
+			if (stored != null) {
+				interned = stored;
+			}
+		}
+		return interned;
+	}
+
+	/**
+	 * @return the number of distinct lookups
+	 */
+	int size() {
+		return lookups.size();
+	}
+}
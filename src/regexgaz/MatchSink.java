@@ -0,0 +1,20 @@
+package regexgaz;
+
+/**
+ * Receives the matches found in a text by
+ * {@link RegexGazetteer#match(CharSequence, MatchSink)}, without any
+ * annotation being created.
+ */
+public interface MatchSink {
+
+	/**
+	 * Called for each match, in the order the annotations would be added to a
+	 * document
+	 *
+	 * @param entry the matched entry, which gives its list and its
+	 * {@link GazetteerNode}
+	 * @param start the offset of the first char of the match
+	 * @param end the offset after the last char of the match
+	 */
+	void match(CompiledEntry entry, int start, int end);
+}
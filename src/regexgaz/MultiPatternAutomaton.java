@@ -0,0 +1,412 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+
+/**
+ * Matches all the entries of a gazetteer in a single pass over the text.
+ * <p>
+ * The entries are compiled into one Thompson NFA which is simulated by a DFA
+ * built lazily while the documents are scanned. The DFA ignores the zero-width
+ * assertions (\b, ^, $...), so it reports, for each entry, a superset of the
+ * offsets where a match of the entry can end. The exact matches are then found
+ * by the pattern of the entry, which only has to look at the text preceding
+ * the reported offsets: the entries without any reported offset, which are
+ * most of them in a large gazetteer, are not evaluated at all.
+ * <p>
+ * The literal entries are left to the FSM of the gazetteer. The entries
+ * using constructs that cannot be expressed by a finite automaton
+ * (back references, lookaround...), and the entries that can match the empty
+ * string, are not handled by the automaton and have to be matched by
+ * java.util.regex alone, see {@link #getUnsupportedEntries()}.
+ * <p>
+ * Instances are immutable once built, apart from the DFA cache which is safe
+ * for concurrent use, so they can be shared by several gazetteers.
+ */
+final class MultiPatternAutomaton {
+
+	/**
+	 * the number of DFA states above which the cache is discarded
+	 */
+	private static final int MAX_STATES = 10000;
+
+	private static final int[] NO_INTS = new int[0];
+
+	private final Nfa nfa;
+
+	/**
+	 * the compiled-entry table the automaton was built from
+	 */
+	private final List<CompiledEntry> entries;
+
+	/**
+	 * the maximum length of the matches of each handled entry, by entry index,
+	 * or {@link RegexParser#UNBOUNDED}; null for the entries that are not
+	 * handled by the automaton
+	 */
+	private final Integer[] maxLengths;
+
+	private final Map<CompiledEntry, String> unsupportedEntries;
+
+	/**
+	 * the SET instructions reached from the start of the expressions, grouped
+	 * by the code points they accept when their set is small
+	 */
+	private final Map<Integer, int[]> startByCodePoint = new HashMap<>();
+
+	/**
+	 * the SET instructions reached from the start of the expressions whose set
+	 * is too large to be enumerated
+	 */
+	private final int[] startOthers;
+
+	/*---------------- DFA cache, guarded by this ----------------*/
+	private Map<IntArray, State> states = new HashMap<>();
+
+	private volatile State initialState;
+
+	private final Map<Integer, int[]> startStepCache = new HashMap<>();
+
+	private int[] marks;
+
+	private int generation;
+
+	private int[] stack;
+
+	/**
+	 * Builds the automaton of a table of compiled entries
+	 */
+	MultiPatternAutomaton(List<CompiledEntry> entries) {
+		nfa = new Nfa();
+		this.entries = entries;
+		maxLengths = new Integer[entries.size()];
+		Map<CompiledEntry, String> unsupported = new LinkedHashMap<>();
+		List<Integer> starts = new ArrayList<>();
+		for (int index = 0; index < entries.size(); index++) {
+			CompiledEntry entry = entries.get(index);
+			if (entry.isLiteral()) {
+				// matched with the FSM of the gazetteer
+				continue;
+			}
+			RegexParser.Node root = entry.getTree();
+			if (root == null) {
+				unsupported.put(entry, entry.getUnparsedReason());
+				continue;
+			}
+			if (root.minLength() == 0) {
+				unsupported.put(entry, "matches the empty string");
+				continue;
+			}
+			int start = nfa.add(root, index);
+			if (start < 0) {
+				unsupported.put(entry, "too large");
+				continue;
+			}
+			starts.add(start);
+			maxLengths[index] = root.maxLength();
+		}
+		nfa.trim();
+		unsupportedEntries = Collections.unmodifiableMap(unsupported);
+		marks = new int[nfa.size()];
+		// every instruction is visited once and pushes at most two others
+		stack = new int[2 * nfa.size() + 1];
+
+		// index the first steps of all the expressions
+		List<Integer> others = new ArrayList<>();
+		Map<Integer, List<Integer>> byCodePoint = new HashMap<>();
+		for (int pc : closure(toArray(starts), new ArrayList<Integer>())) {
+			int[] codePoints = nfa.sets.get(nfa.arg[pc]).enumerate();
+			if (codePoints == null) {
+				others.add(pc);
+				continue;
+			}
+			for (int cp : codePoints) {
+				List<Integer> pcs = byCodePoint.get(cp);
+				if (pcs == null) {
+					pcs = new ArrayList<>();
+					byCodePoint.put(cp, pcs);
+				}
+				pcs.add(pc);
+			}
+		}
+		for (Map.Entry<Integer, List<Integer>> e : byCodePoint.entrySet()) {
+			startByCodePoint.put(e.getKey(), toArray(e.getValue()));
+		}
+		startOthers = toArray(others);
+		initialState = newState(NO_INTS, NO_INTS);
+	}
+
+	/**
+	 * @return the entries that are matched by java.util.regex alone, with the
+	 * reason why they are not handled by the automaton
+	 */
+	Map<CompiledEntry, String> getUnsupportedEntries() {
+		return unsupportedEntries;
+	}
+
+	/**
+	 * @return true if the candidates reported by {@link #scan} for the entry
+	 * at a position of the table are complete
+	 */
+	boolean handles(int index) {
+		return maxLengths[index] != null;
+	}
+
+	/**
+	 * Scans a text and collects the offsets where the handled entries may
+	 * have a match ending.
+	 */
+	Candidates scan(CharSequence text) {
+		Candidates candidates = new Candidates();
+		State state = initialState;
+		int length = text.length();
+		int i = 0;
+		while (i < length) {
+			int cp = text.charAt(i++);
+			if (Character.isHighSurrogate((char) cp) && i < length
+					&& Character.isLowSurrogate(text.charAt(i))) {
+				cp = Character.toCodePoint((char) cp, text.charAt(i++));
+			}
+			State next = state.next(cp);
+			if (next == null) {
+				next = transition(state, cp);
+			}
+			state = next;
+			for (int id : state.accepts) {
+				candidates.add(id, i);
+			}
+		}
+		return candidates.sort();
+	}
+
+	/**
+	 * Returns the matches of a handled entry: the same matches, in the same
+	 * order, as the ones found by successive calls to {@link Matcher#find()}
+	 * on the whole text.
+	 *
+	 * @param index the position in the table of an entry handled by this
+	 * automaton
+	 * @param text the text given to {@link #scan}
+	 * @param candidates the result of the scan of the text
+	 */
+	EntryMatcher matcher(int index, CharSequence text, Candidates candidates) {
+		return new EntryMatcher(entries.get(index).getRegex(), text,
+				maxLengths[index], candidates.getOffsets(index));
+	}
+
+	/**
+	 * Returns the matches of a handled entry starting in [from, to[, followed
+	 * by some of the next ones: the same matches as the ones found by
+	 * {@link Matcher#find(int)} from the offset from and the following calls
+	 * to {@link Matcher#find()}. The maximum length of the matches of the
+	 * entry must be bounded.
+	 */
+	EntryMatcher matcher(int index, CharSequence text, Candidates candidates,
+			int from, int to) {
+		int maxLength = maxLengths[index];
+		return new EntryMatcher(entries.get(index).getRegex(), text, maxLength,
+				candidates.getOffsets(index, from,
+						(int) Math.min(Integer.MAX_VALUE, (long) to + maxLength)), from);
+	}
+
+	/*---------------- DFA construction ----------------*/
+	private synchronized State transition(State state, int cp) {
+		State next = state.next(cp);
+		if (next != null) {
+			// computed by another thread in the meantime
+			return next;
+		}
+		List<Integer> targets = new ArrayList<>();
+		for (int pc : state.pcs) {
+			if (nfa.sets.get(nfa.arg[pc]).contains(cp)) {
+				targets.add(nfa.out[pc]);
+			}
+		}
+		for (int pc : startStep(cp)) {
+			targets.add(nfa.out[pc]);
+		}
+		List<Integer> accepts = new ArrayList<>();
+		int[] pcs = closure(toArray(targets), accepts);
+		Arrays.sort(pcs);
+		int[] ids = toArray(accepts);
+		Arrays.sort(ids);
+		IntArray key = new IntArray(pcs, ids);
+		next = states.get(key);
+		if (next == null) {
+			if (states.size() >= MAX_STATES) {
+				// start afresh, the states still in use by other scans remain valid
+				states = new HashMap<>();
+				initialState = newState(NO_INTS, NO_INTS);
+			}
+			next = newState(pcs, ids);
+		}
+		state.put(cp, next);
+		return next;
+	}
+
+	private State newState(int[] pcs, int[] accepts) {
+		State state = new State(pcs, accepts);
+		states.put(new IntArray(pcs, accepts), state);
+		return state;
+	}
+
+	/**
+	 * @return the SET instructions of the start of the expressions accepting
+	 * a code point
+	 */
+	private int[] startStep(int cp) {
+		int[] step = startStepCache.get(cp);
+		if (step == null) {
+			int[] indexed = startByCodePoint.get(cp);
+			List<Integer> pcs = new ArrayList<>();
+			if (indexed != null) {
+				for (int pc : indexed) {
+					pcs.add(pc);
+				}
+			}
+			for (int pc : startOthers) {
+				if (nfa.sets.get(nfa.arg[pc]).contains(cp)) {
+					pcs.add(pc);
+				}
+			}
+			step = toArray(pcs);
+			startStepCache.put(cp, step);
+		}
+		return step;
+	}
+
+	/**
+	 * Follows the SPLIT and ASSERT instructions from a set of instructions.
+	 *
+	 * @param accepts receives the ids of the MATCH instructions reached
+	 * @return the SET instructions reached
+	 */
+	private int[] closure(int[] from, List<Integer> accepts) {
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(marks, 0);
+			generation = 1;
+		}
+		List<Integer> result = new ArrayList<>();
+		int top = 0;
+		for (int pc : from) {
+			stack[top++] = pc;
+			while (top > 0) {
+				int current = stack[--top];
+				if (marks[current] == generation) {
+					continue;
+				}
+				marks[current] = generation;
+				switch (nfa.op[current]) {
+					case Nfa.SET:
+						result.add(current);
+						break;
+					case Nfa.SPLIT:
+						stack[top++] = nfa.out1[current];
+						stack[top++] = nfa.out[current];
+						break;
+					case Nfa.ASSERT:
+						stack[top++] = nfa.out[current];
+						break;
+					default:
+						accepts.add(nfa.arg[current]);
+				}
+			}
+		}
+		return toArray(result);
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+		return array;
+	}
+
+	/**
+	 * A state of the DFA: the NFA instructions that are alive, besides the
+	 * start of all the expressions which is implicit.
+	 */
+	private static final class State {
+
+		final int[] pcs;
+
+		final int[] accepts;
+
+		/**
+		 * the transitions on the Latin-1 characters. The array is filled
+		 * without synchronization, which is safe since the states have only
+		 * final fields
+		 */
+		final State[] latin1 = new State[256];
+
+		/**
+		 * the other transitions, created when first needed
+		 */
+		volatile Map<Integer, State> others;
+
+		State(int[] pcs, int[] accepts) {
+			this.pcs = pcs;
+			this.accepts = accepts;
+		}
+
+		State next(int cp) {
+			if (cp < 256) {
+				return latin1[cp];
+			}
+			Map<Integer, State> map = others;
+			return map == null ? null : map.get(cp);
+		}
+
+		void put(int cp, State next) {
+			if (cp < 256) {
+				latin1[cp] = next;
+				return;
+			}
+			if (others == null) {
+				others = new ConcurrentHashMap<>();
+			}
+			others.put(cp, next);
+		}
+	}
+
+	/**
+	 * The key of a DFA state in the cache
+	 */
+	private static final class IntArray {
+
+		private final int[] pcs;
+
+		private final int[] accepts;
+
+		private final int hash;
+
+		IntArray(int[] pcs, int[] accepts) {
+			this.pcs = pcs;
+			this.accepts = accepts;
+			hash = Arrays.hashCode(pcs) * 31 + Arrays.hashCode(accepts);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof IntArray)) {
+				return false;
+			}
+			IntArray other = (IntArray) obj;
+			return hash == other.hash && Arrays.equals(pcs, other.pcs)
+					&& Arrays.equals(accepts, other.accepts);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A Thompson NFA built from one or more parsed regular expressions. Each
+ * expression ends in its own MATCH instruction carrying the expression id, so
+ * that the union of many expressions can be simulated at once.
+ * <p>
+ * The program is an array of instructions; SPLIT instructions list their
+ * targets in order of preference so that the priorities of the greedy and
+ * reluctant quantifiers and of the alternations are kept.
+ */
+final class Nfa {
+
+	/**
+	 * consumes one code point of the set sets[arg] and goes to out
+	 */
+	static final int SET = 0;
+
+	/**
+	 * goes to out, then to out1 with a lower priority
+	 */
+	static final int SPLIT = 1;
+
+	/**
+	 * checks the assertion of kind arg and goes to out
+	 */
+	static final int ASSERT = 2;
+
+	/**
+	 * the expression arg has matched
+	 */
+	static final int MATCH = 3;
+
+	/**
+	 * the limit on the number of instructions of a single expression. Counted
+	 * repetitions are expanded, so the expressions above this limit are better
+	 * left to java.util.regex
+	 */
+	static final int MAX_EXPRESSION_SIZE = 10000;
+
+	private int size;
+
+	int[] op = new int[64];
+
+	int[] arg = new int[64];
+
+	int[] out = new int[64];
+
+	int[] out1 = new int[64];
+
+	final List<CharSet> sets = new ArrayList<>();
+
+	private final Map<CharSet, Integer> setIndexes = new HashMap<>();
+
+	/**
+	 * @return the number of instructions
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an expression to the program
+	 *
+	 * @param root the syntax tree of the expression
+	 * @param id the id reported by the MATCH instruction of the expression
+	 * @return the first instruction of the expression, or -1 if the
+	 * expression is too large
+	 */
+	int add(RegexParser.Node root, int id) {
+		if (estimateSize(root) > MAX_EXPRESSION_SIZE) {
+			return -1;
+		}
+		int match = emit(MATCH, id, -1, -1);
+		return compile(root, match);
+	}
+
+	/**
+	 * Shrinks the instruction arrays once all the expressions have been added
+	 */
+	void trim() {
+		op = Arrays.copyOf(op, size);
+		arg = Arrays.copyOf(arg, size);
+		out = Arrays.copyOf(out, size);
+		out1 = Arrays.copyOf(out1, size);
+	}
+
+	private static long estimateSize(RegexParser.Node node) {
+		if (node instanceof RegexParser.Sequence) {
+			long total = 0;
+			for (RegexParser.Node item : ((RegexParser.Sequence) node).items) {
+				total += estimateSize(item);
+			}
+			return total;
+		}
+		if (node instanceof RegexParser.Alternation) {
+			long total = 0;
+			for (RegexParser.Node alternative : ((RegexParser.Alternation) node).alternatives) {
+				total += estimateSize(alternative) + 1;
+			}
+			return total;
+		}
+		if (node instanceof RegexParser.Repeat) {
+			RegexParser.Repeat repeat = (RegexParser.Repeat) node;
+			long copies = repeat.max == RegexParser.UNBOUNDED ? repeat.min + 1 : repeat.max;
+			return copies * (estimateSize(repeat.node) + 1);
+		}
+		return 1;
+	}
+
+	/**
+	 * Compiles a node so that it continues to the instruction next
+	 *
+	 * @return the first instruction of the node
+	 */
+	private int compile(RegexParser.Node node, int next) {
+		if (node instanceof RegexParser.Atom) {
+			return emit(SET, setIndex(((RegexParser.Atom) node).set), next, -1);
+		}
+		if (node instanceof RegexParser.Assertion) {
+			return emit(ASSERT, ((RegexParser.Assertion) node).kind, next, -1);
+		}
+		if (node instanceof RegexParser.Sequence) {
+			RegexParser.Node[] items = ((RegexParser.Sequence) node).items;
+			for (int i = items.length - 1; i >= 0; i--) {
+				next = compile(items[i], next);
+			}
+			return next;
+		}
+		if (node instanceof RegexParser.Alternation) {
+			RegexParser.Node[] alternatives = ((RegexParser.Alternation) node).alternatives;
+			int first = compile(alternatives[alternatives.length - 1], next);
+			for (int i = alternatives.length - 2; i >= 0; i--) {
+				first = emit(SPLIT, 0, compile(alternatives[i], next), first);
+			}
+			return first;
+		}
+		RegexParser.Repeat repeat = (RegexParser.Repeat) node;
+		int tail = next;
+		if (repeat.max == RegexParser.UNBOUNDED) {
+			int loop = emit(SPLIT, 0, -1, -1);
+			int body = compile(repeat.node, loop);
+			out[loop] = repeat.greedy ? body : next;
+			out1[loop] = repeat.greedy ? next : body;
+			tail = loop;
+		} else {
+			for (int i = repeat.min; i < repeat.max; i++) {
+				int body = compile(repeat.node, tail);
+				tail = repeat.greedy ? emit(SPLIT, 0, body, next) : emit(SPLIT, 0, next, body);
+			}
+		}
+		for (int i = 0; i < repeat.min; i++) {
+			tail = compile(repeat.node, tail);
+		}
+		return tail;
+	}
+
+	private int setIndex(CharSet set) {
+		Integer index = setIndexes.get(set);
+		if (index == null) {
+			index = sets.size();
+			sets.add(set);
+			setIndexes.put(set, index);
+		}
+		return index;
+	}
+
+	private int emit(int opcode, int argument, int next, int next1) {
+		if (size == op.length) {
+			int capacity = size * 2;
+			op = Arrays.copyOf(op, capacity);
+			arg = Arrays.copyOf(arg, capacity);
+			out = Arrays.copyOf(out, capacity);
+			out1 = Arrays.copyOf(out1, capacity);
+		}
+		op[size] = opcode;
+		arg[size] = argument;
+		out[size] = next;
+		out1[size] = next1;
+		return size++;
+	}
+}
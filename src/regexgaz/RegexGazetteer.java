@@ -21,7 +21,9 @@ package regexgaz;
  *
  * $Id:DefaultGazetteer.java 17806 2014-04-11 09:10:02Z markagreenwood $
  */
+import gate.Annotation;
 import gate.AnnotationSet;
+import gate.Document;
 import gate.Factory;
 import gate.FeatureMap;
 import gate.Resource;
@@ -32,18 +34,37 @@ import gate.creole.ResourceInstantiationException;
 import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
 import gate.creole.metadata.Optional;
+import gate.creole.metadata.RunTime;
+import gate.event.ProgressListener;
+import gate.util.Files;
+import gate.util.GateRuntimeException;
 import gate.util.Strings;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.PatternSyntaxException;
 import static gate.Utils.addAnn;
-import static gate.Utils.stringFor;
 
 /**
  * This component is responsible for doing lists lookup. The implementation is
@@ -58,6 +79,9 @@ import static gate.Utils.stringFor;
  * <li>the major type (required) </li>
  * <li>the minor type (optional)</li>
  * <li>the language(s) (optional) </li>
+ * <li>the annotation type (optional) </li>
+ * <li>the engine matching the regular expressions of the list, java or
+ * linear (optional, see the regexEngine parameter) </li>
  * </ol>
  * The elements of each definition are separated by &quot;:&quot;. The following
  * is an example of a valid definition: <br>
@@ -76,226 +100,1305 @@ public class RegexGazetteer extends AbstractGazetteer
 
 	private static final long serialVersionUID = -8976141132455436099L;
 
-	protected FSMState initialState;
+	static final String JAVA_ENGINE = "java";
 
-	protected Set<FSMState> fsmStates;
+	static final String LINEAR_ENGINE = "linear";
+
+	/**
+	 * The trie of the literal entries compiled by the init steps
+	 */
+	protected LiteralTrie literalTrie;
+
+	/**
+	 * Should the literal entries be matched by their minimal automaton, which
+	 * shares their suffixes, rather than by a trie?
+	 */
+	protected Boolean minimizeLiterals = false;
+
+	/**
+	 * The minimal automaton of the literal entries compiled by the init steps
+	 * when minimizeLiterals is set, null otherwise
+	 */
+	protected LiteralDafsa literalDafsa;
 
 	protected String gazetteerFeatureSeparator;
 
+	/**
+	 * The lists read by init(), replaced by the lists of each new version
+	 * when the lists are reloaded
+	 */
 	protected Map<LinearNode, GazetteerList> listsByNode;
 
+	/**
+	 * The entries of the lists compiled by the init steps: all of them, or
+	 * the ones selected by the type filters. This table and the structures
+	 * below built from it are only the work of the init steps, which
+	 * compile a selection of a version of the lists: the lists matched, and
+	 * their statistics, are read through listsVersion, as a reload or a
+	 * change of the type filters replaces them.
+	 */
+	protected List<CompiledEntry> compiledEntries;
+
+	/**
+	 * Should the entries be matched in a single pass over the documents by a
+	 * multi-pattern automaton instead of one pass per entry?
+	 */
+	protected Boolean useAutomaton = false;
+
+	/**
+	 * The automaton built from the compiled entries when useAutomaton is set,
+	 * null otherwise
+	 */
+	protected MultiPatternAutomaton automaton;
+
+	/**
+	 * The literal factors of the regular expression entries that are not
+	 * matched by the automaton
+	 */
+	protected LiteralPrefilter prefilter;
+
+	/**
+	 * The first characters of the regular expression entries that are not
+	 * matched by the automaton and have no literal factor
+	 */
+	protected FirstCharIndex firstCharIndex;
+
+	/**
+	 * The maximum length of the matches of each compiled entry, by entry
+	 * index, or {@link RegexParser#UNBOUNDED} if it cannot be bounded
+	 */
+	protected int[] maxMatchLengths;
+
+	/**
+	 * The entries whose matches have no maximum length
+	 */
+	protected List<CompiledEntry> unchunkedEntries;
+
+	/**
+	 * The engine matching the regular expression entries of the lists that
+	 * do not name one: "java" for java.util.regex, or "linear" for an engine
+	 * whose time is linear in the length of the documents whatever the
+	 * expressions, but which does not support all of their syntax.
+	 */
+	protected String regexEngine = JAVA_ENGINE;
+
+	/**
+	 * The entries that were to be matched by the linear-time engine but are
+	 * matched by java.util.regex since the engine does not support them, with
+	 * the reason why
+	 */
+	protected Map<CompiledEntry, String> unsupportedLinearEntries;
+
+	/**
+	 * The number of lists loaded at once by init(), or 0 for as many as there
+	 * are processors
+	 */
+	protected Integer loadingThreads = 0;
+
+	/**
+	 * The major types, annotation types and names of the lists whose entries
+	 * are matched, or null or empty for all of them
+	 */
+	protected List<String> majorTypes;
+
+	protected List<String> annotationTypes;
+
+	protected List<String> listNames;
+
+	/**
+	 * The current version of the lists and the selections of them compiled
+	 * so far. The selection of the type filters set when init() runs is
+	 * compiled by init(), and the others the first time they are used. The
+	 * reference is shared with the duplicates of this gazetteer, so that a
+	 * reload of the lists (see watchLists) replaces the version they use as
+	 * well.
+	 */
+	protected AtomicReference<ListsVersion> listsVersion;
+
+	/**
+	 * Should the files of the lists be watched, and the lists changed be
+	 * reloaded?
+	 */
+	protected Boolean watchLists = false;
+
+	/**
+	 * The watcher of the files of the lists, or null
+	 */
+	private transient ListWatcher listWatcher;
+
+	/**
+	 * The lock serialising the reloads of the lists with the changes of the
+	 * watcher and the snapshots written, which the matching threads never
+	 * take
+	 */
+	private final transient Object reloadLock = new Object();
+
+	/**
+	 * The entries of the lists compiled by the init steps running, by node,
+	 * put in it by the threads loading or compiling the lists. It is the map
+	 * of the version of the lists being compiled, so the entries of the lists
+	 * compiled for a previous selection of the version, or taken from the
+	 * previous version if the list did not change, are not compiled again.
+	 */
+	private transient Map<LinearNode, List<CompiledEntry>> compiledNodes;
+
+	/**
+	 * The lists compiled by the init steps running, or null for all of them
+	 */
+	private transient Set<LinearNode> selectedNodes;
+
+	/**
+	 * The binary snapshot of the lists and of the trie read by init() instead
+	 * of the lists when it is up to date, or null. A snapshot in a file that is missing or
+	 * out of date is written again once the lists are read.
+	 */
+	protected URL snapshotURL;
+
+	/**
+	 * true if init() read the lists from the snapshot
+	 */
+	protected boolean snapshotLoaded;
+
+	/**
+	 * The transitions of the trie read from the snapshot, used by the init
+	 * steps running instead of building the trie from the entries, or null
+	 */
+	private transient LiteralTrie.Transitions snapshotTransitions;
+
+	/**
+	 * The final state of each entry in the trie read from the snapshot, by
+	 * node, or NO_STATE for the regular expressions
+	 */
+	private transient Map<LinearNode, int[]> snapshotStates;
+
+	/**
+	 * The final state of each compiled entry in the trie read from the
+	 * snapshot, by entry index
+	 */
+	private transient int[] entryStates;
+
+	/**
+	 * The state of the lists read by init(), written with them to the
+	 * snapshot once the trie is built
+	 */
+	private transient List<GazetteerSnapshot.Source> snapshotSources;
+
+	/**
+	 * The number of threads matching the entries of a document. With 1, the
+	 * default, the entries are matched on the calling thread.
+	 */
+	protected Integer parallelism = 1;
+
+	/**
+	 * The length of the chunks the documents are split into when they are
+	 * matched by several threads, or 0 to match the documents whole
+	 */
+	protected Integer chunkSize = 0;
+
+	/**
+	 * The maximum number of chars a search of an entry may read from a
+	 * document, or 0 for no limit. An entry whose search exceeds it is
+	 * abandoned for the document.
+	 */
+	protected Long maxEntrySteps = 0L;
+
+	/**
+	 * The entries abandoned by execute() because they exceeded
+	 * maxEntrySteps, with their cost
+	 */
+	private final Map<CompiledEntry, EntryCost> abandonedEntries = new LinkedHashMap<>();
+
+	/**
+	 * The number of distinct lookups of the entries, see
+	 * {@link #getDistinctLookups()}
+	 */
+	protected int distinctLookups;
+
+	/**
+	 * The pool sharing the lookups of the entries while they are compiled
+	 */
+	private transient LookupPool lookupPool;
+
+	/**
+	 * The character sets computed with java.util.regex while parsing the
+	 * patterns of the entries, by class, shared by all the entries compiled
+	 * from the lists of this gazetteer and of its duplicates
+	 */
+	transient Map<String, CharSet> javaClasses;
+
+	/**
+	 * The pools running the matching tasks when parallelism is above 1, by
+	 * parallelism, each created when first needed. A pool is only shut down
+	 * by cleanup(), since a call using another parallelism does not know
+	 * whether another call is still running on it. The threads of a pool no
+	 * longer used end once idle.
+	 */
+	private final transient Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
 	/**
 	 * Does the actual loading and parsing of the lists. This method must be
-	 * called before the gazetteer can be used
+	 * called before the gazetteer can be used. Everything it builds, down to
+	 * the numbering of the states of the trie, belongs to this gazetteer,
+	 * so independent gazetteers can be initialised by several threads at
+	 * once, even from the same lists and snapshot.
 	 */
 	@Override
 	public Resource init() throws ResourceInstantiationException {
-		fsmStates = new HashSet<>();
-		initialState = new FSMState(this);
+		snapshotTransitions = null;
+		snapshotStates = null;
+		lookupPool = new LookupPool();
+		javaClasses = new ConcurrentHashMap<>();
+		compiledNodes = new ConcurrentHashMap<>();
 		if (listsURL == null) {
 			throw new ResourceInstantiationException(
 					"No URL provided for gazetteer creation!");
 		}
+		String separator = Strings.unescape(gazetteerFeatureSeparator);
+		snapshotSources = null;
+		GazetteerSnapshot snapshot = snapshotURL == null ? null : readSnapshot(separator);
+		snapshotLoaded = snapshot != null;
+		if (snapshotLoaded) {
+			definition = snapshot.definition;
+			listsByNode = definition.getListsByNode();
+			if (snapshot.trie != null && !minimizeLiterals) {
+				snapshotTransitions = snapshot.trie;
+				snapshotStates = snapshot.finalStates;
+			}
+		} else {
+			loadLists(separator);
+		}
+		List<LinearNode> selection = selectedNodes();
+		if (selection.size() < listsByNode.size()) {
+			fireStatusChanged(selection.size() + " of " + listsByNode.size()
+					+ " lists selected by the type filters");
+			selectedNodes = new HashSet<>(selection);
+			// the trie of the snapshot has the entries of all the lists
+			snapshotTransitions = null;
+			snapshotStates = null;
+		} else if (snapshotLoaded && snapshot.trie == null && !minimizeLiterals) {
+			// the snapshot was taken from a trie missing some of the lists
+			readSnapshotSources();
+		}
+		CompiledLists lists = compileLists();
+		selectedNodes = null;
+		ListsVersion version = new ListsVersion(0, listsByNode, compiledNodes);
+		compiledNodes = null;
+		version.compiledSelections.put(selection, lists);
+		listsVersion = new AtomicReference<>(version);
+		watchLists();
+		fireProcessFinished();
+		return this;
+	}
+
+	/**
+	 * Starts watching the files of the lists if watchLists is set, after
+	 * stopping the watcher of the lists read by a previous init()
+	 */
+	private void watchLists() {
+		synchronized (reloadLock) {
+			if (listWatcher != null) {
+				listWatcher.close();
+				listWatcher = null;
+			}
+			if (watchLists != null && watchLists) {
+				try {
+					listWatcher = new ListWatcher(this, listsByNode);
+					fireStatusChanged("Watching the files of " + listWatcher.size() + " lists");
+				} catch (IOException ex) {
+					fireStatusChanged("The lists are not watched: " + ex);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reloads some lists that changed and replaces the version of the lists,
+	 * shared with the duplicates of this gazetteer, by a new one. The
+	 * selections compiled so far that include these lists are compiled again
+	 * from the new version, the entries of their other lists being reused
+	 * rather than compiled again, and the other
+	 * selections are kept as they are. Until the new version replaces the
+	 * previous one, the documents are matched against the previous one, and
+	 * if a list cannot be reloaded or compiled, the previous one is kept.
+	 * The lists of the definition are replaced once the new version is used.
+	 * <p>
+	 * A {@link GazetteerEvent#RELOAD} event is fired once the new version
+	 * is used.
+	 *
+	 * @param changed the lists to reload
+	 */
+	void reloadLists(Collection<LinearNode> changed) {
+		synchronized (reloadLock) {
+			long start = System.nanoTime();
+			ListsVersion current = listsVersion.get();
+			// put in the order of the definition, as when the lists are loaded,
+			// so that the map iterates over them in the same order
+			Map<LinearNode, GazetteerList> lists = new HashMap<>();
+			List<LinearNode> reloaded = new ArrayList<>();
+			ListsVersion next;
+			try {
+				for (LinearNode node : definition.getNodes()) {
+					GazetteerList list = current.listsByNode.get(node);
+					if (changed.contains(node)) {
+						fireStatusChanged("Reloading " + node.toString());
+						list = reloadList(list);
+						reloaded.add(node);
+					}
+					lists.put(node, list);
+				}
+				// the entries of the lists that did not change are not compiled again
+				Map<LinearNode, List<CompiledEntry>> compiledNodes = new ConcurrentHashMap<>(current.compiledNodes);
+				compiledNodes.keySet().removeAll(reloaded);
+				next = new ListsVersion(current.number + 1, lists, compiledNodes);
+				Map<List<LinearNode>, CompiledLists> selections;
+				synchronized (current.compiledSelections) {
+					// from the least recently used one, which the new version keeps
+					selections = new LinkedHashMap<>(current.compiledSelections);
+				}
+				for (Map.Entry<List<LinearNode>, CompiledLists> e : selections.entrySet()) {
+					List<LinearNode> selection = e.getKey();
+					next.compiledSelections.put(selection, Collections.disjoint(selection, reloaded) ? e.getValue()
+							: compileSelection(lists, selection, compiledNodes));
+				}
+			} catch (ResourceInstantiationException | GateRuntimeException ex) {
+				fireStatusChanged("Lists not reloaded, the previous ones are still used: " + ex.getMessage());
+				return;
+			}
+			listsVersion.set(next);
+			listsByNode = lists;
+			definition.setListsByNode(lists);
+			long nanos = System.nanoTime() - start;
+			fireStatusChanged(reloaded.size() + " lists reloaded in " + nanos / 1000000 + " ms: version "
+					+ next.number + " of the lists");
+			fireGazetteerEvent(new GazetteerEvent(this, GazetteerEvent.RELOAD, reloaded, next.number, nanos));
+		}
+	}
+
+	/**
+	 * @return a list read again from the file of a list, with the same
+	 * settings
+	 */
+	private static GazetteerList reloadList(GazetteerList previous) throws ResourceInstantiationException {
+		GazetteerList list = new GazetteerList();
+		list.setSeparator(previous.getSeparator());
+		list.setURL(previous.getURL());
+		list.setEncoding(previous.getEncoding());
+		list.load(false);
+		return list;
+	}
+
+	/**
+	 * Builds the trie, the compiled-entry table and the structures matching
+	 * them from the lists loaded, or from the selected lists only if some of
+	 * them are selected
+	 *
+	 * @return the structures built
+	 */
+	private CompiledLists compileLists() throws ResourceInstantiationException {
+		compileEntries();
+		// the lookups of the entries taken from the previous version of the
+		// lists, and of the lists not selected, are not all in the pool
+		Set<Lookup> lookups = Collections.newSetFromMap(new IdentityHashMap<Lookup, Boolean>());
+		for (CompiledEntry entry : compiledEntries) {
+			lookups.add(entry.getLookup());
+		}
+		distinctLookups = lookups.size();
+		// the pool is only needed to build the entries
+		lookupPool = null;
+		fireStatusChanged(compiledEntries.size() + " entries compiled into "
+				+ distinctLookups + " distinct lookups");
+		buildLiteralMatcher();
+		if (snapshotSources != null) {
+			// the trie is built
+			try {
+				GazetteerSnapshot.write(Files.fileFromURL(snapshotURL), definition, literalTrie,
+						snapshotSources);
+				fireStatusChanged("Snapshot written to " + snapshotURL);
+			} catch (IOException ex) {
+				fireStatusChanged("No snapshot written: " + ex);
+			}
+			snapshotSources = null;
+		}
+		if (useAutomaton) {
+			buildAutomaton();
+		} else {
+			automaton = null;
+		}
+		buildPrefilter();
+		buildFirstCharIndex();
+		computeMaxMatchLengths();
+		CompiledLists lists = new CompiledLists(this);
+		int literals = 0;
+		for (CompiledEntry entry : compiledEntries) {
+			if (entry.isLiteral()) {
+				literals++;
+			}
+		}
+		// the literal entries compile no pattern, so the trie is what matches them
+		fireStatusChanged(literals + " literal entries matched by "
+				+ (minimizeLiterals ? "a minimal automaton" : "a trie") + " of " + lists.trieStates()
+				+ " states taking " + lists.trieFootprint() + " bytes, without patterns");
+		return lists;
+	}
+
+	/**
+	 * @return the lists selected by the type filters, in the order of the
+	 * compiled-entry table
+	 */
+	private List<LinearNode> selectedNodes() {
+		return selectedNodes(listsByNode);
+	}
+
+	/**
+	 * @return the lists of a version selected by the type filters, in the
+	 * order of its compiled-entry table
+	 */
+	private List<LinearNode> selectedNodes(Map<LinearNode, GazetteerList> listsByNode) {
+		List<LinearNode> selection = new ArrayList<>();
+		for (LinearNode node : listsByNode.keySet()) {
+			if (matchesFilters(node)) {
+				selection.add(node);
+			}
+		}
+		return selection;
+	}
+
+	/**
+	 * @return true if a list is selected by the type filters
+	 */
+	private boolean matchesFilters(LinearNode node) {
+		return matchesFilter(majorTypes, node.getMajorType())
+				&& matchesFilter(annotationTypes, node.getAnnotationType())
+				&& matchesFilter(listNames, node.getList());
+	}
+
+	private static boolean matchesFilter(List<String> filter, String value) {
+		return filter == null || filter.isEmpty() || filter.contains(value);
+	}
+
+	/**
+	 * @return true if the entries of a list are compiled by the init steps
+	 * running
+	 */
+	private boolean isSelected(LinearNode node) {
+		return selectedNodes == null || selectedNodes.contains(node);
+	}
+
+	/**
+	 * Returns the lists of the current version selected by the type filters,
+	 * compiled. A selection is compiled the first time it is used, by one
+	 * thread while the others using it wait, from the entries of its lists
+	 * compiled for the previous selections, and is then shared with the
+	 * duplicates of this gazetteer.
+	 *
+	 * @throws GateRuntimeException if an entry of the selected lists cannot be
+	 * compiled
+	 * @throws IllegalStateException if the gazetteer is not initialised
+	 */
+	private CompiledLists selectedLists() {
+		if (listsVersion == null) {
+			throw new IllegalStateException("The gazetteer is not initialised");
+		}
+		ListsVersion version = listsVersion.get();
+		List<LinearNode> selection = selectedNodes(version.listsByNode);
+		CompiledLists lists = version.compiledSelections.get(selection);
+		if (lists == null) {
+			synchronized (version.compiledSelections) {
+				lists = version.compiledSelections.get(selection);
+				if (lists == null) {
+					try {
+						lists = compileSelection(version.listsByNode, selection, version.compiledNodes);
+					} catch (ResourceInstantiationException ex) {
+						throw new GateRuntimeException("Could not compile the selected lists: " + ex.getMessage(), ex);
+					}
+					version.compiledSelections.put(selection, lists);
+				}
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Compiles the selected lists of a version with the init steps of a
+	 * gazetteer sharing these lists, several lists at once
+	 *
+	 * @param compiledNodes the entries of the lists of the version compiled
+	 * so far, by node, which are not compiled again, and to which the
+	 * entries of the other selected lists are added
+	 */
+	private CompiledLists compileSelection(Map<LinearNode, GazetteerList> listsByNode,
+			List<LinearNode> selection, Map<LinearNode, List<CompiledEntry>> compiledNodes)
+			throws ResourceInstantiationException {
+		fireStatusChanged("Compiling the " + selection.size() + " lists selected by the type filters...");
+		RegexGazetteer compiler = new RegexGazetteer();
+		compiler.definition = definition;
+		compiler.listsByNode = listsByNode;
+		compiler.regexEngine = regexEngine;
+		compiler.useAutomaton = useAutomaton;
+		compiler.minimizeLiterals = minimizeLiterals;
+		compiler.javaClasses = javaClasses;
+		compiler.loadingThreads = loadingThreads;
+		compiler.selectedNodes = new HashSet<>(selection);
+		compiler.compiledNodes = compiledNodes;
+		CompiledLists lists = compiler.compileLists();
+		fireStatusChanged(lists.entries.size() + " entries compiled for the selected lists");
+		return lists;
+	}
+
+	/**
+	 * Loads the definition and its lists, and reads their state if there is a
+	 * snapshot to write. The entries of the lists selected by the type
+	 * filters are compiled by the threads loading the lists.
+	 */
+	private void loadLists(String separator) throws ResourceInstantiationException {
 		definition = new LinearDefinition();
-		definition.setSeparator(Strings.unescape(gazetteerFeatureSeparator));
+		definition.setSeparator(separator);
 		definition.setURL(listsURL);
 		definition.load();
+		// the state of the lists before they are read
+		readSnapshotSources();
 		int linesCnt = definition.size();
-		listsByNode = definition.loadLists();
-		Iterator<LinearNode> inodes = definition.iterator();
+		fireStatusChanged("Loading " + linesCnt + " lists...");
+		listsByNode = definition.loadLists(false, loadingThreads(), new ProgressListener() {
+			@Override
+			public void progressChanged(int i) {
+				fireProgressChanged(i);
+			}
 
-		int nodeIdx = 0;
-		LinearNode node;
-		while (inodes.hasNext()) {
-			node = inodes.next();
-			fireStatusChanged("Reading " + node.toString());
-			fireProgressChanged(++nodeIdx * 100 / linesCnt);
-			readList(node);
+			@Override
+			public void processFinished() {
+			}
+		}, (node, list) -> {
+			if (matchesFilters(node)) {
+				compiledNodes.put(node, compileList(node, list));
+			}
+		});
+	}
+
+	/**
+	 * @return the number of lists loaded or compiled at once
+	 */
+	private int loadingThreads() {
+		return loadingThreads == null || loadingThreads <= 0
+				? Runtime.getRuntime().availableProcessors() : loadingThreads;
+	}
+
+	/**
+	 * Reads the state of the definition and of its lists if there is a
+	 * snapshot in a file to write once the trie is built
+	 */
+	private void readSnapshotSources() {
+		if (snapshotURL != null && "file".equals(snapshotURL.getProtocol())) {
+			try {
+				snapshotSources = GazetteerSnapshot.sources(definition);
+			} catch (IOException ex) {
+				fireStatusChanged("No snapshot written: " + ex);
+			}
 		}
-		fireProcessFinished();
-		return this;
 	}
 
 	/**
-	 * Reads one lst file (~node)
+	 * Reads the definition, its lists and the transitions of the trie from
+	 * the snapshot
 	 *
-	 * @param node the node
+	 * @return the definition, the transitions and the final states of the
+	 * entries, or null if the snapshot cannot be read or is out of date
 	 */
-	protected void readList(LinearNode node)
-			throws ResourceInstantiationException {
-		String listName, majorType, minorType, languages, annotationType;
-		if (null == node) {
-			throw new ResourceInstantiationException(" LinearNode node is null ");
+	private GazetteerSnapshot readSnapshot(String separator) {
+		fireStatusChanged("Reading the snapshot " + snapshotURL + "...");
+		try {
+			return GazetteerSnapshot.read(snapshotURL, listsURL, separator);
+		} catch (GazetteerSnapshot.StaleSnapshotException ex) {
+			fireStatusChanged("Snapshot out of date, " + ex.getMessage());
+		} catch (IOException ex) {
+			fireStatusChanged("Snapshot not read: " + ex);
 		}
+		return null;
+	}
 
-		listName = node.getList();
-		majorType = node.getMajorType();
-		minorType = node.getMinorType();
-		languages = node.getLanguage();
-		annotationType = node.getAnnotationType();
-		GazetteerList gazList = listsByNode.get(node);
-		if (null == gazList) {
-			throw new ResourceInstantiationException("gazetteer list not found by node");
+	/**
+	 * Writes a snapshot of the lists and of the trie of this gazetteer, from
+	 * which another gazetteer can be initialised without reading and parsing
+	 * the lists or building the trie (see
+	 * {@link #setSnapshotURL(URL)}). The snapshot records the current state of
+	 * the definition and of the lists, so it is only up to date if they have
+	 * not been modified since they were read, by init() or by the last reload.
+	 *
+	 * @param file the file to write the snapshot to
+	 * @throws IOException if the snapshot or the lists cannot be read or
+	 * written
+	 * @throws GateRuntimeException if the lists selected by the type filters
+	 * cannot be compiled
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		synchronized (reloadLock) {
+			GazetteerSnapshot.write(file, definition, selectedLists().trie,
+					GazetteerSnapshot.sources(definition));
 		}
+	}
 
-		Iterator<GazetteerNode> iline = gazList.iterator();
+	/**
+	 * @return true if init() read the lists from the snapshot rather than from
+	 * the lists themselves
+	 */
+	public boolean isSnapshotLoaded() {
+		return snapshotLoaded;
+	}
 
-		Lookup defaultLookup = new Lookup(listName, majorType, minorType, languages, annotationType);
-		defaultLookup.list = node.getList();
-		Lookup lookup;
-		String entry;
-		while (iline.hasNext()) {
-			GazetteerNode gazNode = iline.next();
-			entry = gazNode.getEntry();
+	/**
+	 * @return the number of the version of the lists matched: 0 for the
+	 * lists read by init(), then 1 after the first reload of changed lists...
+	 */
+	public int getListsVersion() {
+		return listsVersion.get().number;
+	}
 
-			Map<String, Object> entryFeatures = gazNode.getFeatureMap();
-			if (entryFeatures == null) {
-				//lookup without additional features
-				lookup = defaultLookup;
-			} else {
-				// lookup with additional features
-				lookup = new Lookup(listName, majorType, minorType, languages, annotationType);
-				lookup.list = node.getList();
-				lookup.features = entryFeatures;
+	/**
+	 * Builds the compiled-entry table. The lists are visited in the same order
+	 * used by execute() so that the annotations kept with longestMatchOnly do
+	 * not depend on how the entries were compiled: the entries compiled by
+	 * several threads at once are merged in this order. The lists whose
+	 * entries were not compiled while they were loaded are compiled first,
+	 * and the final state of the literal entries in the trie read from the
+	 * snapshot is recorded.
+	 */
+	protected void compileEntries() throws ResourceInstantiationException {
+		if (compiledNodes == null) {
+			compiledNodes = new ConcurrentHashMap<>();
+		}
+		List<LinearNode> toCompile = new ArrayList<>();
+		for (LinearNode node : listsByNode.keySet()) {
+			if (isSelected(node) && !compiledNodes.containsKey(node)) {
+				toCompile.add(node);
+			}
+		}
+		compileNodes(toCompile);
+		List<CompiledEntry> entries = new ArrayList<>();
+		int[] states = new int[16];
+		Map<CompiledEntry, String> unsupported = new LinkedHashMap<>();
+		for (LinearNode node : listsByNode.keySet()) {
+			if (!isSelected(node)) {
+				continue;
+			}
+			List<CompiledEntry> nodeEntries = compiledNodes.get(node);
+			if (states.length < entries.size() + nodeEntries.size()) {
+				states = Arrays.copyOf(states, 2 * (entries.size() + nodeEntries.size()));
+			}
+			Arrays.fill(states, entries.size(), entries.size() + nodeEntries.size(), LiteralTrie.NO_STATE);
+			int[] finalStates = snapshotStates == null ? null : snapshotStates.get(node);
+			if (finalStates != null) {
+				// the entries of the list in order, but the empty ones
+				List<GazetteerNode> gazNodes = listsByNode.get(node).getEntries();
+				int next = 0;
+				for (int i = 0; i < gazNodes.size(); i++) {
+					if (!gazNodes.get(i).getEntry().isEmpty()) {
+						if (nodeEntries.get(next).isLiteral()) {
+							states[entries.size() + next] = finalStates[i];
+						}
+						next++;
+					}
+				}
+			}
+			for (CompiledEntry entry : nodeEntries) {
+				if (entry.getLinearUnsupportedReason() != null) {
+					unsupported.put(entry, entry.getLinearUnsupportedReason());
+				}
 			}
-			addEntry(entry, lookup);
+			entries.addAll(nodeEntries);
+		}
+		compiledEntries = Collections.unmodifiableList(entries);
+		entryStates = Arrays.copyOf(states, entries.size());
+		unsupportedLinearEntries = Collections.unmodifiableMap(unsupported);
+		if (!unsupported.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			message.append(unsupported.size()).append(" entries not handled by the linear engine:");
+			for (Map.Entry<CompiledEntry, String> e : unsupported.entrySet()) {
+				message.append("\n  ").append(e.getKey()).append(" (").append(e.getValue()).append(")");
+			}
+			fireStatusChanged(message.toString());
 		}
 	}
 
 	/**
-	 * Adds one entry to the list of phrases recognized by this gazetteer
+	 * Compiles the entries of some lists into compiledNodes, several lists at
+	 * once. The progress is reported on this thread, as the lists are
+	 * compiled.
+	 */
+	private void compileNodes(List<LinearNode> nodes) throws ResourceInstantiationException {
+		if (nodes.isEmpty()) {
+			return;
+		}
+		fireStatusChanged("Compiling " + nodes.size() + " lists...");
+		// the pool is shared by the threads compiling the lists
+		lookupPool();
+		int threads = Math.min(loadingThreads(), nodes.size());
+		if (threads <= 1) {
+			for (int done = 1; done <= nodes.size(); done++) {
+				LinearNode node = nodes.get(done - 1);
+				compiledNodes.put(node, compileList(node, listsByNode.get(node)));
+				fireProgressChanged(done * 100 / nodes.size());
+			}
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CompletionService<List<CompiledEntry>> completion = new ExecutorCompletionService<>(executor);
+			for (final LinearNode node : nodes) {
+				completion.submit(() -> compiledNodes.put(node, compileList(node, listsByNode.get(node))));
+			}
+			for (int done = 1; done <= nodes.size(); done++) {
+				// a list that cannot be compiled stops the others
+				completion.take().get();
+				fireProgressChanged(done * 100 / nodes.size());
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new ResourceInstantiationException(ex);
+		} catch (java.util.concurrent.ExecutionException ex) {
+			if (ex.getCause() instanceof ResourceInstantiationException) {
+				throw (ResourceInstantiationException) ex.getCause();
+			}
+			throw new ResourceInstantiationException(ex.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Compiles the entries of a list, but the empty ones, in the order of the
+	 * list. Several lists may be compiled at once.
 	 *
-	 * @param entry the phrase to be added
-	 * @param lookup the description of the annotation to be added when this
-	 * phrase is recognized
-	 */
-	public void addEntry(String entry, Lookup lookup) {
-		char currentChar;
-		FSMState currentState = initialState;
-		FSMState nextState;
-		boolean isSpace;
-
-		for (int i = 0; i < entry.length(); i++) {
-			currentChar = entry.charAt(i);
-			isSpace = Character.isSpaceChar(currentChar) || Character.isWhitespace(currentChar);
-			if (isSpace) {
-				currentChar = ' ';
-			}
-			nextState = currentState.next(currentChar);
-			if (nextState == null) {
-				nextState = new FSMState(this);
-				currentState.put(currentChar, nextState);
-				if (isSpace) {
-					nextState.put(' ', nextState);
-				}
+	 * @throws ResourceInstantiationException if an entry is not a valid
+	 * regular expression, or the engine of the list is unknown
+	 */
+	private List<CompiledEntry> compileList(LinearNode node, GazetteerList list)
+			throws ResourceInstantiationException {
+		boolean linear = isLinearEngine(node);
+		List<CompiledEntry> entries = new ArrayList<>();
+		for (GazetteerNode gazNode : list.getEntries()) {
+			if (gazNode.getEntry().isEmpty()) {
+				// nothing to match
+				continue;
+			}
+			try {
+				entries.add(new CompiledEntry(node, gazNode, createLookup(gazNode, node), linear, javaClasses));
+			} catch (PatternSyntaxException ex) {
+				throw new ResourceInstantiationException("Invalid entry in list "
+						+ node.getList() + ": " + ex.getMessage(), ex);
+			}
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * @return true if the regular expressions of a list are matched by the
+	 * linear-time engine, as named by the list definition or else by the
+	 * regexEngine parameter
+	 */
+	private boolean isLinearEngine(LinearNode node) throws ResourceInstantiationException {
+		String engine = node.getEngine();
+		if (engine == null || engine.isEmpty()) {
+			engine = regexEngine;
+		}
+		if (JAVA_ENGINE.equalsIgnoreCase(engine)) {
+			return false;
+		}
+		if (LINEAR_ENGINE.equalsIgnoreCase(engine)) {
+			return true;
+		}
+		throw new ResourceInstantiationException("Unknown regular expression engine "
+				+ engine + " for list " + node.getList());
+	}
+
+	/**
+	 * Builds the multi-pattern automaton of the compiled entries and reports
+	 * the entries it cannot handle, which are matched one by one.
+	 */
+	protected void buildAutomaton() {
+		fireStatusChanged("Building the automaton...");
+		automaton = new MultiPatternAutomaton(compiledEntries);
+		Map<CompiledEntry, String> unsupported = automaton.getUnsupportedEntries();
+		if (!unsupported.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			message.append(unsupported.size()).append(" entries not handled by the automaton:");
+			for (Map.Entry<CompiledEntry, String> e : unsupported.entrySet()) {
+				message.append("\n  ").append(e.getKey()).append(" (").append(e.getValue()).append(")");
+			}
+			fireStatusChanged(message.toString());
+		}
+	}
+
+	/**
+	 * Extracts the literal factors of the regular expression entries that
+	 * are not matched by the trie or the automaton, so that their patterns are
+	 * only run where their factors occur.
+	 */
+	protected void buildPrefilter() {
+		List<CompiledEntry> entries = new ArrayList<>();
+		for (int i = 0; i < compiledEntries.size(); i++) {
+			CompiledEntry entry = compiledEntries.get(i);
+			if (!entry.isLiteral() && (automaton == null || !automaton.handles(i))) {
+				entries.add(entry);
 			}
-			currentState = nextState;
 		}
-		currentState.addLookup(lookup);
+		prefilter = new LiteralPrefilter(entries);
+		fireStatusChanged(prefilter.size() + " of " + entries.size()
+				+ " regular expression entries have a literal factor");
+	}
+
+	/**
+	 * Indexes the regular expression entries that are left, i.e. that are
+	 * not matched by the automaton and have no literal factor, by their first
+	 * characters. The entries matched by the linear-time engine are left out,
+	 * as the index tries the entries at each offset with java.util.regex.
+	 */
+	protected void buildFirstCharIndex() {
+		List<CompiledEntry> entries = new ArrayList<>();
+		for (int i = 0; i < compiledEntries.size(); i++) {
+			CompiledEntry entry = compiledEntries.get(i);
+			if (!entry.isLiteral() && (automaton == null || !automaton.handles(i))
+					&& !prefilter.handles(entry) && !entry.isLinear()) {
+				entries.add(entry);
+			}
+		}
+		firstCharIndex = new FirstCharIndex(entries);
+		fireStatusChanged(firstCharIndex.size() + " of " + entries.size()
+				+ " regular expression entries indexed by their first characters");
+	}
+
+	/**
+	 * Computes the maximum length of the matches of the regular expression
+	 * entries, which bounds the text a chunk of a document has to share with
+	 * the next one, and reports the entries that are matched on the whole
+	 * documents since their length cannot be bounded. The literal entries,
+	 * whose occurrences are all found, and the entries indexed by their first
+	 * characters, which are matched at each offset, need no bound.
+	 */
+	protected void computeMaxMatchLengths() {
+		maxMatchLengths = new int[compiledEntries.size()];
+		List<CompiledEntry> unbounded = new ArrayList<>();
+		for (int i = 0; i < compiledEntries.size(); i++) {
+			CompiledEntry entry = compiledEntries.get(i);
+			int maxLength = RegexParser.UNBOUNDED;
+			RegexParser.Node tree = entry.getTree();
+			// the empty matches would make the searches of two chunks step
+			// differently, and no bound is known for the patterns not parsed
+			if (tree != null && tree.minLength() > 0) {
+				maxLength = tree.maxLength();
+			}
+			maxMatchLengths[i] = maxLength;
+			if (maxLength == RegexParser.UNBOUNDED && !entry.isLiteral()
+					&& !firstCharIndex.handles(entry)) {
+				unbounded.add(entry);
+			}
+		}
+		unchunkedEntries = Collections.unmodifiableList(unbounded);
+		if (!unbounded.isEmpty()) {
+			StringBuilder message = new StringBuilder();
+			message.append(unbounded.size()).append(" entries matched on the whole documents:");
+			for (CompiledEntry entry : unbounded) {
+				message.append("\n  ").append(entry);
+			}
+			fireStatusChanged(message.toString());
+		}
+	}
+
+	/**
+	 * @return the entries whose matches have no maximum length, which are
+	 * matched on the whole documents even when the documents are split into
+	 * chunks. Like the other statistics of the compiled entries, they are the
+	 * ones of the lists matched by execute(): the current version of the
+	 * lists selected by the type filters, which is compiled if it is not yet.
+	 */
+	public List<CompiledEntry> getUnchunkedEntries() {
+		return selectedLists().unchunkedEntries;
+	}
+
+	/**
+	 * @return the entries of the lists using the linear-time engine that it
+	 * does not support, with the reason why. These entries are matched by
+	 * java.util.regex.
+	 */
+	public Map<CompiledEntry, String> getUnsupportedLinearEntries() {
+		return selectedLists().unsupportedLinearEntries;
+	}
+
+	/**
+	 * @return the entries that the automaton cannot handle, with the reason
+	 * why, or an empty map if the automaton is not used
+	 */
+	public Map<CompiledEntry, String> getUnsupportedEntries() {
+		CompiledLists lists = selectedLists();
+		if (lists.automaton == null) {
+			return Collections.emptyMap();
+		}
+		return lists.automaton.getUnsupportedEntries();
+	}
+
+	/**
+	 * Builds the structure matching the literal entries: their minimal
+	 * automaton if minimizeLiterals is set, or else their trie with its
+	 * Aho-Corasick failure and output links, built from the sorted entries or
+	 * from the transitions read from the snapshot
+	 */
+	protected void buildLiteralMatcher() {
+		if (minimizeLiterals) {
+			literalDafsa = new LiteralDafsa(compiledEntries);
+			literalTrie = null;
+		} else if (snapshotTransitions != null) {
+			literalTrie = snapshotTransitions.build(entryStates);
+			literalDafsa = null;
+		} else {
+			literalTrie = LiteralTrie.build(compiledEntries);
+			literalDafsa = null;
+		}
+		snapshotTransitions = null;
+		snapshotStates = null;
+		entryStates = null;
+	}
+
+	/**
+	 * @return the number of bytes taken by the trie, or the minimal
+	 * automaton, matching the literal entries of the lists matched by
+	 * execute(). The literal entries have no compiled pattern, so this is all
+	 * it takes to match them besides the entries themselves.
+	 */
+	public long getTrieFootprint() {
+		return selectedLists().trieFootprint();
+	}
+
+	/**
+	 * @return the number of states of the trie, or the minimal automaton,
+	 * matching the literal entries of the lists matched by execute()
+	 */
+	public int getTrieStates() {
+		return selectedLists().trieStates();
+	}
+
+	static boolean isSpace(char c) {
+		return Character.isSpaceChar(c) || Character.isWhitespace(c);
 	}
 
 	@Override
 	public void execute() throws ExecutionException {
 		interrupted = false;
-		AnnotationSet annotationSet;
 		if (document == null) {
 			throw new ExecutionException("No document to process!");
 		}
-		if (annotationSetName == null || "".equals(annotationSetName)) {
-			annotationSet = document.getAnnotations();
-		} else {
-			annotationSet = document.getAnnotations(annotationSetName);
-		}
 		fireStatusChanged("Performing look-up in " + document.getName() + "...");
 
-		String content = document.getContent().toString();
-		Set<LinearNode> nodes = listsByNode.keySet();
-
-		for (LinearNode node : nodes) {
-			searchMatches(node, content, annotationSet);
+		CompiledLists lists;
+		try {
+			lists = selectedLists();
+		} catch (GateRuntimeException ex) {
+			throw new ExecutionException(ex.getMessage(), ex);
 		}
+		annotate(document, lists);
 
 		fireProcessFinished();
 		fireStatusChanged("Look-up complete!");
 	}
 
-	private void searchMatches(LinearNode node, String content, AnnotationSet annotationSet) {
-		GazetteerList gazList = listsByNode.get(node);
-		for (GazetteerNode gazNode : gazList.getEntries()) {
-			String entry = gazNode.getEntry();
-			//if first or last character is a letter add \b to entry to match whole words only
-			if (entry.substring(0, 1).matches("\\p{L}")) {
-				entry = "\\b" + entry;
-			}
-			if (entry.substring(entry.length() - 1).matches("\\p{L}")) {
-				entry = entry + "\\b";
-			}
-			Pattern pattern = Pattern.compile(entry, Pattern.DOTALL);
-			Matcher matcher = pattern.matcher(content);
-			while (matcher.find()) {
-				
-				Long matchStart = (long)matcher.start();
-				Long matchEnd = (long)matcher.end();
-				
-				if (longestMatchOnly) {
-					String type = node.getAnnotationType();
-					//if there are annotations of the same type covering the matched region, continue.
-					AnnotationSet coveringAnnots = annotationSet.getCovering(type, matchStart, matchEnd);
-					if (!coveringAnnots.isEmpty()){ 
-						continue;
-					}
-					//remove annotations of the same type contained in the matched region
-					AnnotationSet containedAnnots = annotationSet.get(type, matchStart, matchEnd);
-					annotationSet.removeAll(containedAnnots);
+	/**
+	 * Annotates several documents concurrently, as execute() would annotate
+	 * each of them, on a pool of as many threads as there are processors.
+	 *
+	 * @param documents the documents to annotate
+	 * @return the number of documents annotated and of annotations added, the
+	 * time taken, and the documents that could not be annotated
+	 * @throws ExecutionException if the calling thread is interrupted
+	 */
+	public BatchReport executeBatch(Collection<Document> documents) throws ExecutionException {
+		int threads = Math.max(1, Math.min(documents.size(), Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			return executeBatch(documents, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Annotates several documents concurrently, as execute() would annotate
+	 * each of them, each document being annotated by a task of an executor.
+	 * The documents share the state built by init(), and the failure of one of
+	 * them does not stop the others: it is recorded in the report.
+	 * <p>
+	 * The executor can be of any kind, e.g. a pool of platform threads, or
+	 * with JDK 21 one starting a virtual thread per task. It is not shut down.
+	 *
+	 * @param documents the documents to annotate
+	 * @param executor the executor running the tasks
+	 * @return the number of documents annotated and of annotations added, the
+	 * time taken, and the documents that could not be annotated
+	 * @throws ExecutionException if the calling thread is interrupted, in
+	 * which case the tasks not finished are cancelled
+	 */
+	public BatchReport executeBatch(Collection<Document> documents, ExecutorService executor)
+			throws ExecutionException {
+		interrupted = false;
+		long start = System.nanoTime();
+		fireStatusChanged("Performing look-up in " + documents.size() + " documents...");
+		final CompiledLists lists;
+		try {
+			lists = selectedLists();
+		} catch (GateRuntimeException ex) {
+			throw new ExecutionException(ex.getMessage(), ex);
+		}
+		CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+		Map<Future<Integer>, Document> tasks = new HashMap<>();
+		for (final Document doc : documents) {
+			tasks.put(completion.submit(() -> annotate(doc, lists)), doc);
+		}
+		// the tasks are reported on this thread, as they finish
+		BatchReport report = new BatchReport();
+		try {
+			for (int done = 1; done <= tasks.size(); done++) {
+				Future<Integer> task = completion.take();
+				try {
+					report.annotated(task.get());
+				} catch (java.util.concurrent.ExecutionException ex) {
+					report.failed(tasks.get(task), ex.getCause());
 				}
-				Lookup lookup = createLookup(gazNode, node);
-				addLookupsToDoc(lookup, matchStart, matchEnd, annotationSet, gazNode);
+				fireProgressChanged(done * 100 / tasks.size());
+			}
+		} catch (InterruptedException ex) {
+			for (Future<Integer> task : tasks.keySet()) {
+				task.cancel(true);
 			}
+			Thread.currentThread().interrupt();
+			throw new ExecutionException("Interrupted after " + report.getDocuments() + " documents", ex);
 		}
+		report.finished(System.nanoTime() - start);
+
+		fireProcessFinished();
+		fireStatusChanged("Look-up complete: " + report);
+		return report;
 	}
-	
-	private Lookup createLookup(GazetteerNode gazNode, LinearNode node) {
-		Lookup lookup;
-		if (node.getAnnotationType() != null) {
-			lookup = new Lookup(node.getList(), node.getMajorType(),
-					node.getMinorType(), node.getLanguage(), node.getAnnotationType());
+
+	/**
+	 * Adds the Lookup annotations of the matches found in a document
+	 *
+	 * @return the number of annotations added
+	 */
+	private int annotate(Document doc, CompiledLists lists) {
+		final AnnotationSet annotationSet;
+		if (annotationSetName == null || "".equals(annotationSetName)) {
+			annotationSet = doc.getAnnotations();
+		} else {
+			annotationSet = doc.getAnnotations(annotationSetName);
+		}
+		// the content of a document holds its text as a string, which is
+		// returned as is: the text is neither copied nor read back through the
+		// document to build the string features
+		final String content = doc.getContent().toString();
+		final int[] added = new int[1];
+		Set<Annotation> replaced = match(lists, content, doc.getName(), annotationSet, (entry, start, end) -> {
+			addLookupsToDoc(entry, content, start, end, annotationSet);
+			added[0]++;
+		});
+		annotationSet.removeAll(replaced);
+		return added[0];
+	}
+
+	/**
+	 * Finds the matches of the entries in a text without creating any
+	 * annotation. The matches are the ones execute() would annotate in a
+	 * document having this text and no annotations, in the same order, and
+	 * are subject to the same runtime parameters (longestMatchOnly,
+	 * parallelism, chunkSize and maxEntrySteps).
+	 * <p>
+	 * This method may be called concurrently by several threads once the
+	 * gazetteer is initialised, and the sink is called on the calling
+	 * thread.
+	 *
+	 * @param text the text to search
+	 * @param sink the receiver of the matches
+	 */
+	public void match(CharSequence text, MatchSink sink) {
+		match(selectedLists(), text, "text", null, sink);
+	}
+
+	/**
+	 * Finds the matches of the entries in a text and passes them to a sink in
+	 * the order of the compiled-entry table, or with longestMatchOnly in the
+	 * order they are kept.
+	 *
+	 * @param name the name of the text in the messages
+	 * @param annotationSet the annotations of the document having this text,
+	 * which the matches kept with longestMatchOnly may replace, or null
+	 * @return the annotations of the set replaced by the matches
+	 */
+	private Set<Annotation> match(CompiledLists lists, CharSequence content, String name,
+			AnnotationSet annotationSet, MatchSink sink) {
+		StepBudget budget = new StepBudget(maxEntrySteps == null ? 0 : maxEntrySteps);
+		DocumentMatches matches = new DocumentMatches(lists, content, budget);
+		Integer parallelism = this.parallelism;
+		if (parallelism == null || parallelism <= 1) {
+			// a single thread gains nothing from the chunks
+			matches.scan();
+			matches.matchEntries(0, lists.entries.size());
+		} else {
+			if (chunkSize != null && chunkSize > 0 && content.length() > chunkSize) {
+				matches.split(chunkSize);
+			}
+			getPool(parallelism).invoke(matches.new ParallelMatch());
+		}
+		// the matches are passed on this thread, in the order of the table
+		Set<Annotation> replaced = Collections.emptySet();
+		if (longestMatchOnly) {
+			LongestMatches longest = new LongestMatches(annotationSet);
+			for (int i = 0; i < lists.entries.size(); i++) {
+				CompiledEntry entry = lists.entries.get(i);
+				List<int[]> entryMatches = matches.get(i);
+				if (entryMatches != null && !budget.isExceeded(entry)) {
+					String type = entry.getLinearNode().getAnnotationType();
+					for (int[] match : entryMatches) {
+						longest.add(i, type, match[0], match[1]);
+					}
+				}
+			}
+			replaced = longest.getReplaced();
+			for (int k = 0; k < longest.size(); k++) {
+				if (longest.isKept(k)) {
+					sink.match(lists.entries.get(longest.getEntryIndex(k)),
+							longest.getStart(k), longest.getEnd(k));
+				}
+			}
 		} else {
-			lookup = new Lookup(node.getList(), node.getMajorType(), node.getMinorType(), node.getLanguage());
+			for (int i = 0; i < lists.entries.size(); i++) {
+				CompiledEntry entry = lists.entries.get(i);
+				List<int[]> entryMatches = matches.get(i);
+				if (entryMatches != null && !budget.isExceeded(entry)) {
+					for (int[] match : entryMatches) {
+						sink.match(entry, match[0], match[1]);
+					}
+				}
+			}
+		}
+
+		recordAbandoned(lists, budget.getExceeded(), name);
+		return replaced;
+	}
+
+	/**
+	 * Counts the entries abandoned for a text and reports them
+	 */
+	private void recordAbandoned(CompiledLists lists, Map<CompiledEntry, Long> exceeded, String name) {
+		if (exceeded.isEmpty()) {
+			return;
+		}
+		StringBuilder message = new StringBuilder();
+		message.append(exceeded.size()).append(" entries abandoned in ")
+				.append(name).append(":");
+		synchronized (abandonedEntries) {
+			for (CompiledEntry entry : lists.entries) {
+				Long steps = exceeded.get(entry);
+				if (steps == null) {
+					continue;
+				}
+				EntryCost cost = abandonedEntries.get(entry);
+				if (cost == null) {
+					cost = new EntryCost();
+					abandonedEntries.put(entry, cost);
+				}
+				cost.add(steps);
+				message.append("\n  ").append(entry).append(" (").append(steps).append(" steps)");
+			}
+		}
+		fireStatusChanged(message.toString());
+	}
+
+	/**
+	 * @return the entries abandoned for some documents since they exceeded
+	 * maxEntrySteps, with the number of these documents and the steps spent
+	 */
+	public Map<CompiledEntry, EntryCost> getAbandonedEntries() {
+		Map<CompiledEntry, EntryCost> result = new LinkedHashMap<>();
+		synchronized (abandonedEntries) {
+			for (Map.Entry<CompiledEntry, EntryCost> e : abandonedEntries.entrySet()) {
+				result.put(e.getKey(), new EntryCost(e.getValue()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Forgets the entries abandoned so far
+	 */
+	public void resetAbandonedEntries() {
+		synchronized (abandonedEntries) {
+			abandonedEntries.clear();
+		}
+	}
+
+	/**
+	 * @return the pool running the matching tasks with a number of threads,
+	 * created the first time this number is used
+	 */
+	private ForkJoinPool getPool(int parallelism) {
+		return pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+	}
+
+	@Override
+	public void cleanup() {
+		super.cleanup();
+		for (ForkJoinPool pool : pools.values()) {
+			pool.shutdown();
 		}
-		if (gazNode.getFeatureMap() != null) {
-			lookup.features = gazNode.getFeatureMap();
+		pools.clear();
+		synchronized (reloadLock) {
+			if (listWatcher != null) {
+				listWatcher.close();
+				listWatcher = null;
+			}
 		}
-		return lookup;
+	}
+
+	private Lookup createLookup(GazetteerNode gazNode, LinearNode node) {
+		return lookupPool().get(node.getList(), node.getMajorType(), node.getMinorType(),
+				node.getLanguage(), node.getAnnotationType(), gazNode.getFeatureMap());
+	}
+
+	private LookupPool lookupPool() {
+		if (lookupPool == null) {
+			lookupPool = new LookupPool();
+		}
+		return lookupPool;
 	}
 
 	/**
-	 * Add the Lookup annotations to the document
+	 * @return the number of distinct lookups the entries of the lists matched
+	 * by execute() were compiled into: the entries of the same list having
+	 * the same features share their lookup
+	 */
+	public int getDistinctLookups() {
+		return selectedLists().distinctLookups;
+	}
+
+	/**
+	 * Add the Lookup annotation of a match to the document. The features of
+	 * the entry were computed once when it was compiled, only the string and
+	 * the entry features depend on the match and the runtime parameters.
 	 *
-	 * @param lookup the Lookup to be added.
+	 * @param entry the matched entry.
+	 * @param content the text of the document.
 	 * @param startPos the start of the matched text region.
 	 * @param endPos the end of the matched text region.
-	 * @param annotSet the annotation set where the new annotations should be
+	 * @param annotSet the annotation set where the new annotation should be
 	 * added.
 	 */
-	protected void addLookupsToDoc(Lookup lookup, long startPos, long endPos, AnnotationSet annotSet, GazetteerNode gazNode) {
+	protected void addLookupsToDoc(CompiledEntry entry, CharSequence content, int startPos, int endPos,
+			AnnotationSet annotSet) {
 		FeatureMap fm = Factory.newFeatureMap();
-		fm.put(Constants.LOOKUP_MAJOR, lookup.majorType);
-		if (null != lookup.minorType) {
-			fm.put(Constants.LOOKUP_MINOR, lookup.minorType);
-		}
-		if (null != lookup.languages) {
-			fm.put(Constants.LOOKUP_LANG, lookup.languages);
-		}
-		if (null != lookup.features) {
-			fm.putAll(lookup.features);
-		}
+		entry.putFeatures(fm);
 		if (addStringFeature) {
-			fm.put(Constants.LOOKUP_STRING, stringFor(document, startPos, endPos));
+			fm.put(Constants.LOOKUP_STRING, content.subSequence(startPos, endPos).toString());
 		}
-		if (addEntryFeature){
-			fm.put(Constants.LOOKUP_ENTRY, gazNode.getEntry());
+		if (addEntryFeature) {
+			fm.put(Constants.LOOKUP_ENTRY, entry.getEntry());
 		}
-		addAnn(annotSet, startPos, endPos, lookup.annotationType, fm);
+		addAnn(annotSet, startPos, endPos, entry.getLookup().annotationType, fm);
 	}
 
 	/**
@@ -324,27 +1427,31 @@ public class RegexGazetteer extends AbstractGazetteer
 		Object[] itemsObjs = null;
 
 		/**
-		 * resize the containers by one, leaving empty element at position
-		 * 'index'
+		 * the number of items, the containers being larger once they have grown
 		 */
-		void resize(int index) {
-			int newsz = itemsKeys.length + 1;
-			char[] tempKeys = new char[newsz];
-			Object[] tempObjs = new Object[newsz];
-			System.arraycopy(itemsKeys, 0, tempKeys, 0, index);
-			System.arraycopy(itemsObjs, 0, tempObjs, 0, index);
-			System.arraycopy(itemsKeys, index, tempKeys, index + 1, newsz - index - 1);
-			System.arraycopy(itemsObjs, index, tempObjs, index + 1, newsz - index - 1);
+		int size;
 
-			itemsKeys = tempKeys;
-			itemsObjs = tempObjs;
+		/**
+		 * make room for one more item at position 'index', doubling the
+		 * containers when they are full so that adding n items copies O(n)
+		 * of them
+		 */
+		void resize(int index) {
+			if (size == itemsKeys.length) {
+				int newsz = 2 * itemsKeys.length;
+				itemsKeys = Arrays.copyOf(itemsKeys, newsz);
+				itemsObjs = Arrays.copyOf(itemsObjs, newsz);
+			}
+			System.arraycopy(itemsKeys, index, itemsKeys, index + 1, size - index);
+			System.arraycopy(itemsObjs, index, itemsObjs, index + 1, size - index);
+			size++;
 		}
 
 		Object get(char key) {
 			if (itemsKeys == null) {
 				return null;
 			}
-			int index = Arrays.binarySearch(itemsKeys, key);
+			int index = Arrays.binarySearch(itemsKeys, 0, size, key);
 			if (index < 0) {
 				return null;
 			}
@@ -357,9 +1464,10 @@ public class RegexGazetteer extends AbstractGazetteer
 				itemsKeys[0] = key;
 				itemsObjs = new Object[1];
 				itemsObjs[0] = value;
+				size = 1;
 				return value;
 			}// if first time
-			int index = Arrays.binarySearch(itemsKeys, key);
+			int index = Arrays.binarySearch(itemsKeys, 0, size, key);
 			if (index < 0) {
 				index = ~index;
 				resize(index);
@@ -370,6 +1478,132 @@ public class RegexGazetteer extends AbstractGazetteer
 		}
 	}// class CharMap
 
+	public Boolean getUseAutomaton() {
+		return useAutomaton;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "Should all the entries be matched in a single pass over the document?", defaultValue = "false")
+	public void setUseAutomaton(Boolean useAutomaton) {
+		this.useAutomaton = useAutomaton;
+	}
+
+	public Integer getLoadingThreads() {
+		return loadingThreads;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "The number of lists loaded at once, 0 for as many as there are processors", defaultValue = "0")
+	public void setLoadingThreads(Integer loadingThreads) {
+		this.loadingThreads = loadingThreads;
+	}
+
+	public List<String> getMajorTypes() {
+		return majorTypes;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The major types of the lists whose entries are matched, all of them if empty")
+	public void setMajorTypes(List<String> majorTypes) {
+		this.majorTypes = majorTypes;
+	}
+
+	public List<String> getAnnotationTypes() {
+		return annotationTypes;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The annotation types of the lists whose entries are matched, all of them if empty")
+	public void setAnnotationTypes(List<String> annotationTypes) {
+		this.annotationTypes = annotationTypes;
+	}
+
+	public List<String> getListNames() {
+		return listNames;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The names of the lists whose entries are matched, all of them if empty")
+	public void setListNames(List<String> listNames) {
+		this.listNames = listNames;
+	}
+
+	public URL getSnapshotURL() {
+		return snapshotURL;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "The binary snapshot of the lists, read instead of the lists when it is up to date and written otherwise")
+	public void setSnapshotURL(URL snapshotURL) {
+		this.snapshotURL = snapshotURL;
+	}
+
+	public Integer getParallelism() {
+		return parallelism;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The number of threads matching the entries of a document", defaultValue = "1")
+	public void setParallelism(Integer parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	public Integer getChunkSize() {
+		return chunkSize;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The length of the chunks the documents are split into when they are matched by several threads, 0 not to split them", defaultValue = "0")
+	public void setChunkSize(Integer chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public Boolean getMinimizeLiterals() {
+		return minimizeLiterals;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "Should the literal entries be matched by a minimal automaton sharing their suffixes rather than by a trie?", defaultValue = "false")
+	public void setMinimizeLiterals(Boolean minimizeLiterals) {
+		this.minimizeLiterals = minimizeLiterals;
+	}
+
+	public Boolean getWatchLists() {
+		return watchLists;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "Should the files of the lists be watched, and the lists changed be reloaded without stopping the matching?", defaultValue = "false")
+	public void setWatchLists(Boolean watchLists) {
+		this.watchLists = watchLists;
+	}
+
+	public String getRegexEngine() {
+		return regexEngine;
+	}
+
+	@Optional
+	@CreoleParameter(comment = "The engine matching the regular expressions of the lists that do not name one: java or linear", defaultValue = "java")
+	public void setRegexEngine(String regexEngine) {
+		this.regexEngine = regexEngine;
+	}
+
+	public Long getMaxEntrySteps() {
+		return maxEntrySteps;
+	}
+
+	@RunTime
+	@Optional
+	@CreoleParameter(comment = "The maximum number of chars a search of an entry may read from a document before the entry is abandoned for the document, 0 for no limit", defaultValue = "0")
+	public void setMaxEntrySteps(Long maxEntrySteps) {
+		this.maxEntrySteps = maxEntrySteps;
+	}
+
 	public String getGazetteerFeatureSeparator() {
 		return gazetteerFeatureSeparator;
 	}
@@ -0,0 +1,30 @@
+package regexgaz;
+
+import java.util.regex.Matcher;
+
+/**
+ * Searches the matches of the regular expression of an entry in a text. The
+ * matches are the ones found by {@link Matcher#find()} on a region of the
+ * text with transparent and non-anchoring bounds: the region limits where
+ * the matches are, while the zero-width assertions (\b, ^, $...) still see
+ * the whole text.
+ * <p>
+ * Instances are not thread safe.
+ */
+interface RegexMatcher {
+
+	/**
+	 * Limits the search to a region of the text and resets the matcher, see
+	 * {@link Matcher#region(int, int)}
+	 */
+	RegexMatcher region(int start, int end);
+
+	/**
+	 * Finds the next match, see {@link Matcher#find()}
+	 */
+	boolean find();
+
+	int start();
+
+	int end();
+}
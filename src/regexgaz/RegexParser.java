@@ -0,0 +1,742 @@
+package regexgaz;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Parses the subset of the java.util.regex syntax that can be turned into a
+ * finite automaton: literals, character classes, groups, alternations,
+ * greedy and reluctant quantifiers, the inline flags i, s and u, and the
+ * anchors ^, $, \A, \z, \Z, \b and \B. Every other construct (back
+ * references, lookaround, possessive quantifiers, atomic groups...) is
+ * reported with an {@link UnsupportedRegexException} so that the caller can
+ * fall back to java.util.regex.
+ * <p>
+ * The semantics of the accepted constructs are the ones of
+ * {@link java.util.regex.Pattern}, in particular the case insensitive
+ * matching only folds ASCII letters unless the u flag is set.
+ */
+final class RegexParser {
+
+	/**
+	 * Thrown when an expression uses a construct that is not supported
+	 */
+	static final class UnsupportedRegexException extends Exception {
+
+		private static final long serialVersionUID = -2874519204118657630L;
+
+		UnsupportedRegexException(String message) {
+			super(message);
+		}
+	}
+
+	/*---------------- assertion kinds ----------------*/
+	/**
+	 * ^ and \A
+	 */
+	static final int BEGIN_INPUT = 0;
+
+	/**
+	 * \z
+	 */
+	static final int END_INPUT = 1;
+
+	/**
+	 * $ and \Z : end of input or before a line terminator at the end of input
+	 */
+	static final int END_INPUT_OR_TERMINATOR = 2;
+
+	static final int WORD_BOUNDARY = 3;
+
+	static final int NOT_WORD_BOUNDARY = 4;
+
+	/**
+	 * Used as maximum length of the nodes that can match strings of any length
+	 */
+	static final int UNBOUNDED = -1;
+
+	/*---------------- syntax tree ----------------*/
+	abstract static class Node {
+
+		/**
+		 * @return the minimum number of chars matched by this node
+		 */
+		abstract int minLength();
+
+		/**
+		 * @return the maximum number of chars matched by this node or
+		 * {@link #UNBOUNDED}
+		 */
+		abstract int maxLength();
+	}
+
+	/**
+	 * Matches one code point of a set
+	 */
+	static final class Atom extends Node {
+
+		final CharSet set;
+
+		Atom(CharSet set) {
+			this.set = set;
+		}
+
+		@Override
+		int minLength() {
+			return 1;
+		}
+
+		@Override
+		int maxLength() {
+			return set.maxCharCount();
+		}
+	}
+
+	static final class Sequence extends Node {
+
+		final Node[] items;
+
+		Sequence(List<Node> items) {
+			this.items = items.toArray(new Node[items.size()]);
+		}
+
+		@Override
+		int minLength() {
+			int min = 0;
+			for (Node item : items) {
+				min += item.minLength();
+			}
+			return min;
+		}
+
+		@Override
+		int maxLength() {
+			int max = 0;
+			for (Node item : items) {
+				int itemMax = item.maxLength();
+				if (itemMax == UNBOUNDED) {
+					return UNBOUNDED;
+				}
+				max += itemMax;
+			}
+			return max;
+		}
+	}
+
+	/**
+	 * Alternatives, in order of preference
+	 */
+	static final class Alternation extends Node {
+
+		final Node[] alternatives;
+
+		Alternation(List<Node> alternatives) {
+			this.alternatives = alternatives.toArray(new Node[alternatives.size()]);
+		}
+
+		@Override
+		int minLength() {
+			int min = Integer.MAX_VALUE;
+			for (Node alternative : alternatives) {
+				min = Math.min(min, alternative.minLength());
+			}
+			return min;
+		}
+
+		@Override
+		int maxLength() {
+			int max = 0;
+			for (Node alternative : alternatives) {
+				int alternativeMax = alternative.maxLength();
+				if (alternativeMax == UNBOUNDED) {
+					return UNBOUNDED;
+				}
+				max = Math.max(max, alternativeMax);
+			}
+			return max;
+		}
+	}
+
+	static final class Repeat extends Node {
+
+		final Node node;
+
+		final int min;
+
+		/**
+		 * the maximum number of repetitions or {@link #UNBOUNDED}
+		 */
+		final int max;
+
+		final boolean greedy;
+
+		Repeat(Node node, int min, int max, boolean greedy) {
+			this.node = node;
+			this.min = min;
+			this.max = max;
+			this.greedy = greedy;
+		}
+
+		@Override
+		int minLength() {
+			return (int) Math.min(Integer.MAX_VALUE, (long) min * node.minLength());
+		}
+
+		@Override
+		int maxLength() {
+			int nodeMax = node.maxLength();
+			if (nodeMax == 0) {
+				return 0;
+			}
+			if (max == UNBOUNDED || nodeMax == UNBOUNDED) {
+				return UNBOUNDED;
+			}
+			long length = (long) max * nodeMax;
+			return length > Integer.MAX_VALUE ? UNBOUNDED : (int) length;
+		}
+	}
+
+	/**
+	 * A zero-width assertion
+	 */
+	static final class Assertion extends Node {
+
+		final int kind;
+
+		Assertion(int kind) {
+			this.kind = kind;
+		}
+
+		@Override
+		int minLength() {
+			return 0;
+		}
+
+		@Override
+		int maxLength() {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return true if a set is the one of the dot, with or without the DOTALL
+	 * flag
+	 */
+	static boolean isDot(CharSet set) {
+		return set == CharSet.ANY || set == NOT_LINE_TERMINATORS;
+	}
+
+	/*---------------- parser ----------------*/
+	private static final int CASE_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+	private static final CharSet DIGITS = new CharSet.Ranges(new int[]{'0', '9'});
+
+	private static final CharSet SPACES = new CharSet.Ranges(new int[]{'\t', '\r', ' ', ' '});
+
+	private static final CharSet WORD_CHARS = new CharSet.Ranges(new int[]{'a', 'z', 'A', 'Z', '_', '_', '0', '9'});
+
+	private static final CharSet LINE_TERMINATORS = new CharSet.Ranges(new int[]{'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'});
+
+	private static final CharSet NOT_LINE_TERMINATORS = CharSet.not(LINE_TERMINATORS);
+
+	private final String regex;
+
+	private int pos;
+
+	private int flags;
+
+	/**
+	 * the sets computed with java.util.regex, shared between the expressions
+	 * parsed in the same session since most lists reuse the same classes
+	 */
+	private final Map<String, CharSet> javaClasses;
+
+	private RegexParser(String regex, int flags, Map<String, CharSet> javaClasses) {
+		this.regex = regex;
+		this.flags = flags;
+		this.javaClasses = javaClasses;
+	}
+
+	/**
+	 * Parses a regular expression
+	 *
+	 * @param regex the expression, as given to {@link Pattern#compile}
+	 * @param flags the flags the expression is compiled with
+	 * @param javaClasses a cache for the character sets that have to be
+	 * computed with java.util.regex
+	 * @return the syntax tree of the expression
+	 * @throws UnsupportedRegexException if the expression contains a construct
+	 * that is not supported
+	 */
+	static Node parse(String regex, int flags, Map<String, CharSet> javaClasses)
+			throws UnsupportedRegexException {
+		if ((flags & ~(Pattern.DOTALL | CASE_FLAGS)) != 0) {
+			throw new UnsupportedRegexException("unsupported flags");
+		}
+		RegexParser parser = new RegexParser(regex, flags, javaClasses);
+		Node root = parser.parseAlternation();
+		if (parser.pos < regex.length()) {
+			throw new UnsupportedRegexException("unbalanced parenthesis");
+		}
+		return root;
+	}
+
+	private boolean more() {
+		return pos < regex.length();
+	}
+
+	private int peek() {
+		return regex.codePointAt(pos);
+	}
+
+	private int next() throws UnsupportedRegexException {
+		if (!more()) {
+			throw new UnsupportedRegexException("unexpected end of expression");
+		}
+		int cp = regex.codePointAt(pos);
+		pos += Character.charCount(cp);
+		return cp;
+	}
+
+	private boolean has(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	private Node parseAlternation() throws UnsupportedRegexException {
+		List<Node> alternatives = new ArrayList<>();
+		alternatives.add(parseSequence());
+		while (more() && peek() == '|') {
+			pos++;
+			alternatives.add(parseSequence());
+		}
+		return alternatives.size() == 1 ? alternatives.get(0) : new Alternation(alternatives);
+	}
+
+	private Node parseSequence() throws UnsupportedRegexException {
+		List<Node> items = new ArrayList<>();
+		while (more() && peek() != '|' && peek() != ')') {
+			Node atom = parseAtom();
+			if (atom != null) {
+				items.add(parseQuantifier(atom));
+			}
+		}
+		return items.size() == 1 ? items.get(0) : new Sequence(items);
+	}
+
+	/**
+	 * @return the next atom, or null if it was an inline flag group
+	 */
+	private Node parseAtom() throws UnsupportedRegexException {
+		int cp = next();
+		switch (cp) {
+			case '(':
+				return parseGroup();
+			case '[':
+				pos--;
+				return new Atom(parseClass());
+			case '.':
+				return new Atom(has(Pattern.DOTALL) ? CharSet.ANY : NOT_LINE_TERMINATORS);
+			case '^':
+				return new Assertion(BEGIN_INPUT);
+			case '$':
+				return new Assertion(END_INPUT_OR_TERMINATOR);
+			case '\\':
+				return parseEscape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedRegexException("dangling quantifier");
+			default:
+				return new Atom(literal(cp));
+		}
+	}
+
+	private Node parseQuantifier(Node atom) throws UnsupportedRegexException {
+		if (!more()) {
+			return atom;
+		}
+		int min;
+		int max;
+		switch (peek()) {
+			case '*':
+				min = 0;
+				max = UNBOUNDED;
+				pos++;
+				break;
+			case '+':
+				min = 1;
+				max = UNBOUNDED;
+				pos++;
+				break;
+			case '?':
+				min = 0;
+				max = 1;
+				pos++;
+				break;
+			case '{':
+				pos++;
+				min = parseCount();
+				max = min;
+				if (more() && peek() == ',') {
+					pos++;
+					max = more() && peek() == '}' ? UNBOUNDED : parseCount();
+				}
+				if (!more() || next() != '}' || (max != UNBOUNDED && max < min)) {
+					throw new UnsupportedRegexException("illegal repetition");
+				}
+				break;
+			default:
+				return atom;
+		}
+		if (atom instanceof Assertion) {
+			throw new UnsupportedRegexException("repeated assertion");
+		}
+		boolean greedy = true;
+		if (more() && peek() == '?') {
+			greedy = false;
+			pos++;
+		} else if (more() && peek() == '+') {
+			throw new UnsupportedRegexException("possessive quantifier");
+		}
+		if (more() && "*+?{".indexOf(peek()) >= 0) {
+			throw new UnsupportedRegexException("dangling quantifier");
+		}
+		return new Repeat(atom, min, max, greedy);
+	}
+
+	private int parseCount() throws UnsupportedRegexException {
+		int start = pos;
+		while (more() && peek() >= '0' && peek() <= '9') {
+			pos++;
+		}
+		if (start == pos || pos - start > 9) {
+			throw new UnsupportedRegexException("illegal repetition");
+		}
+		return Integer.parseInt(regex.substring(start, pos));
+	}
+
+	private Node parseGroup() throws UnsupportedRegexException {
+		int savedFlags = flags;
+		if (more() && peek() == '?') {
+			pos++;
+			int cp = next();
+			switch (cp) {
+				case ':':
+					break;
+				case '=':
+				case '!':
+					throw new UnsupportedRegexException("lookahead");
+				case '>':
+					throw new UnsupportedRegexException("atomic group");
+				case '<':
+					if (more() && (peek() == '=' || peek() == '!')) {
+						throw new UnsupportedRegexException("lookbehind");
+					}
+					// named group
+					while (next() != '>') {
+						// skip the name
+					}
+					break;
+				default:
+					pos--;
+					parseFlags();
+					if (next() == ')') {
+						// inline modifier, applies to the rest of the enclosing group
+						return null;
+					}
+			}
+		}
+		Node node = parseAlternation();
+		if (!more() || next() != ')') {
+			throw new UnsupportedRegexException("unclosed group");
+		}
+		flags = savedFlags;
+		return node;
+	}
+
+	private void parseFlags() throws UnsupportedRegexException {
+		boolean add = true;
+		while (more() && peek() != ')' && peek() != ':') {
+			int flag;
+			int cp = next();
+			switch (cp) {
+				case '-':
+					add = false;
+					continue;
+				case 'i':
+					flag = Pattern.CASE_INSENSITIVE;
+					break;
+				case 's':
+					flag = Pattern.DOTALL;
+					break;
+				case 'u':
+					flag = Pattern.UNICODE_CASE;
+					break;
+				default:
+					throw new UnsupportedRegexException("inline flag " + new String(Character.toChars(cp)));
+			}
+			flags = add ? flags | flag : flags & ~flag;
+		}
+	}
+
+	private Node parseEscape() throws UnsupportedRegexException {
+		int cp = next();
+		switch (cp) {
+			case 'A':
+				return new Assertion(BEGIN_INPUT);
+			case 'z':
+				return new Assertion(END_INPUT);
+			case 'Z':
+				return new Assertion(END_INPUT_OR_TERMINATOR);
+			case 'b':
+				if (more() && peek() == '{') {
+					throw new UnsupportedRegexException("boundary matcher \\b{");
+				}
+				return new Assertion(WORD_BOUNDARY);
+			case 'B':
+				return new Assertion(NOT_WORD_BOUNDARY);
+			default:
+				pos--;
+				Object value = parseEscapedChar();
+				if (value instanceof CharSet) {
+					return new Atom((CharSet) value);
+				}
+				return new Atom(literal((Integer) value));
+		}
+	}
+
+	/**
+	 * Parses the escape sequence following a backslash
+	 *
+	 * @return the escaped code point as an Integer, or a CharSet for the
+	 * predefined classes
+	 */
+	private Object parseEscapedChar() throws UnsupportedRegexException {
+		int start = pos - 1;
+		int cp = next();
+		switch (cp) {
+			case 'd':
+				return DIGITS;
+			case 'D':
+				return CharSet.not(DIGITS);
+			case 's':
+				return SPACES;
+			case 'S':
+				return CharSet.not(SPACES);
+			case 'w':
+				return WORD_CHARS;
+			case 'W':
+				return CharSet.not(WORD_CHARS);
+			case 'h':
+			case 'H':
+			case 'v':
+			case 'V':
+				return javaClass(regex.substring(start, pos), 0);
+			case 'p':
+			case 'P':
+				if (more() && peek() == '{') {
+					while (next() != '}') {
+						// skip the property name
+					}
+				} else {
+					next();
+				}
+				return javaClass(regex.substring(start, pos), flags & CASE_FLAGS);
+			case 't':
+				return (int) '\t';
+			case 'n':
+				return (int) '\n';
+			case 'r':
+				return (int) '\r';
+			case 'f':
+				return (int) '\f';
+			case 'a':
+				return 7;
+			case 'e':
+				return 27;
+			case 'c':
+				return next() ^ 64;
+			case '0':
+				return parseOctal();
+			case 'x':
+				return parseHex();
+			case 'u':
+				return parseUnicode();
+			default:
+				if (cp < 128 && Character.isLetterOrDigit(cp)) {
+					throw new UnsupportedRegexException("escape \\" + (char) cp);
+				}
+				return cp;
+		}
+	}
+
+	private int parseOctal() throws UnsupportedRegexException {
+		int value = 0;
+		int digits = 0;
+		while (more() && digits < 3 && peek() >= '0' && peek() <= '7') {
+			int newValue = value * 8 + (peek() - '0');
+			if (newValue > 0377) {
+				break;
+			}
+			value = newValue;
+			digits++;
+			pos++;
+		}
+		if (digits == 0) {
+			throw new UnsupportedRegexException("illegal octal escape");
+		}
+		return value;
+	}
+
+	private int parseHex() throws UnsupportedRegexException {
+		int end;
+		int start;
+		if (more() && peek() == '{') {
+			start = pos + 1;
+			end = regex.indexOf('}', start);
+			if (end < 0) {
+				throw new UnsupportedRegexException("illegal hexadecimal escape");
+			}
+			pos = end + 1;
+		} else {
+			start = pos;
+			end = pos + 2;
+			pos = end;
+		}
+		try {
+			int value = Integer.parseInt(regex.substring(start, end), 16);
+			if (!Character.isValidCodePoint(value)) {
+				throw new UnsupportedRegexException("illegal hexadecimal escape");
+			}
+			return value;
+		} catch (NumberFormatException | IndexOutOfBoundsException ex) {
+			throw new UnsupportedRegexException("illegal hexadecimal escape");
+		}
+	}
+
+	private int parseUnicode() throws UnsupportedRegexException {
+		int value = parseHex4();
+		if (Character.isHighSurrogate((char) value) && regex.startsWith("\\u", pos)) {
+			int save = pos;
+			pos += 2;
+			int low = parseHex4();
+			if (Character.isLowSurrogate((char) low)) {
+				return Character.toCodePoint((char) value, (char) low);
+			}
+			pos = save;
+		}
+		return value;
+	}
+
+	private int parseHex4() throws UnsupportedRegexException {
+		try {
+			int value = Integer.parseInt(regex.substring(pos, pos + 4), 16);
+			pos += 4;
+			return value;
+		} catch (NumberFormatException | IndexOutOfBoundsException ex) {
+			throw new UnsupportedRegexException("illegal unicode escape");
+		}
+	}
+
+	/**
+	 * Parses a character class, starting at its opening bracket
+	 */
+	private CharSet parseClass() throws UnsupportedRegexException {
+		int start = pos;
+		pos++;
+		boolean negate = false;
+		if (more() && peek() == '^') {
+			negate = true;
+			pos++;
+		}
+		// set to true when the class has to be evaluated by java.util.regex
+		boolean complex = false;
+		boolean empty = true;
+		CharSet set = new CharSet.Ranges(new int[0]);
+		while (true) {
+			if (!more()) {
+				throw new UnsupportedRegexException("unclosed character class");
+			}
+			int cp = peek();
+			if (cp == ']' && !empty) {
+				pos++;
+				break;
+			}
+			empty = false;
+			if (cp == '[') {
+				complex = true;
+				parseClass();
+				continue;
+			}
+			if (cp == '&' && regex.startsWith("&&", pos)) {
+				complex = true;
+				pos += 2;
+				continue;
+			}
+			Object first = parseClassChar();
+			if (first instanceof CharSet) {
+				complex |= !(first instanceof CharSet.Ranges);
+				set = CharSet.union(set, (CharSet) first);
+				continue;
+			}
+			int from = (Integer) first;
+			int to = from;
+			if (more() && peek() == '-' && pos + 1 < regex.length()
+					&& regex.charAt(pos + 1) != ']' && regex.charAt(pos + 1) != '[') {
+				pos++;
+				Object last = parseClassChar();
+				if (!(last instanceof Integer) || (Integer) last < from) {
+					throw new UnsupportedRegexException("illegal character range");
+				}
+				to = (Integer) last;
+			}
+			set = CharSet.union(set, new CharSet.Ranges(new int[]{from, to}));
+		}
+		if (complex || has(Pattern.CASE_INSENSITIVE)) {
+			return javaClass(regex.substring(start, pos), flags & CASE_FLAGS);
+		}
+		return negate ? CharSet.not(set) : set;
+	}
+
+	private Object parseClassChar() throws UnsupportedRegexException {
+		int cp = next();
+		if (cp != '\\') {
+			return cp;
+		}
+		if (more() && "bBAzZQEG".indexOf(peek()) >= 0) {
+			throw new UnsupportedRegexException("escape in character class");
+		}
+		return parseEscapedChar();
+	}
+
+	/**
+	 * @return the set matching a literal code point with the current flags
+	 */
+	private CharSet literal(int cp) {
+		if (!has(Pattern.CASE_INSENSITIVE)) {
+			return CharSet.of(cp);
+		}
+		if (has(Pattern.UNICODE_CASE)) {
+			return javaClass(Pattern.quote(new String(Character.toChars(cp))), flags & CASE_FLAGS);
+		}
+		if (cp < 128 && Character.isLetter(cp)) {
+			return new CharSet.Ranges(new int[]{
+				Character.toLowerCase(cp), Character.toLowerCase(cp),
+				Character.toUpperCase(cp), Character.toUpperCase(cp)});
+		}
+		return CharSet.of(cp);
+	}
+
+	private CharSet javaClass(String source, int classFlags) {
+		String key = classFlags + ":" + source;
+		CharSet set = javaClasses.get(key);
+		if (set == null) {
+			set = new CharSet.JavaClass(source, classFlags);
+			javaClasses.put(key, set);
+		}
+		return set;
+	}
+}
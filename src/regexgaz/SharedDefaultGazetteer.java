@@ -71,11 +71,19 @@ public class SharedDefaultGazetteer extends RegexGazetteer {
     this.annotationSetName = bootstrapGazetteer.annotationSetName;
     this.definition = bootstrapGazetteer.definition;
     this.encoding = bootstrapGazetteer.encoding;
-    this.fsmStates = bootstrapGazetteer.fsmStates;
     this.gazetteerFeatureSeparator =
             bootstrapGazetteer.gazetteerFeatureSeparator;
-    this.initialState = bootstrapGazetteer.initialState;
-    this.listsByNode = bootstrapGazetteer.listsByNode;
+    this.minimizeLiterals = bootstrapGazetteer.minimizeLiterals;
+    this.useAutomaton = bootstrapGazetteer.useAutomaton;
+    this.regexEngine = bootstrapGazetteer.regexEngine;
+    this.loadingThreads = bootstrapGazetteer.loadingThreads;
+    this.javaClasses = bootstrapGazetteer.javaClasses;
+    // the reference replaced by the reloads of the lists, through which the
+    // compiled lists are read rather than copied, as they would go stale
+    this.listsVersion = bootstrapGazetteer.listsVersion;
+    this.majorTypes = bootstrapGazetteer.majorTypes;
+    this.annotationTypes = bootstrapGazetteer.annotationTypes;
+    this.listNames = bootstrapGazetteer.listNames;
     this.listsURL = bootstrapGazetteer.listsURL;
     this.longestMatchOnly = bootstrapGazetteer.longestMatchOnly;
 
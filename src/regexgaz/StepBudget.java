@@ -0,0 +1,123 @@
+package regexgaz;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Limits the work of the searches of the regular expression entries in a
+ * document, so that a pathological expression backtracking over the text
+ * cannot hold the gazetteer. The work of a search is the number of chars it
+ * reads from the text: the searches of an entry read a {@link CountingText}
+ * which throws an {@link ExceededException} once the budget is spent, and
+ * the entry is then abandoned for the document.
+ * <p>
+ * Instances are used for a single document and may be shared by the threads
+ * matching it.
+ */
+final class StepBudget {
+
+	/**
+	 * Thrown by the reads of a text once the budget of its search is spent
+	 */
+	static final class ExceededException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long steps;
+
+		ExceededException(long steps) {
+			super("more than " + steps + " steps", null, false, false);
+			this.steps = steps;
+		}
+
+		/**
+		 * @return the number of chars read by the search
+		 */
+		long getSteps() {
+			return steps;
+		}
+	}
+
+	/**
+	 * A text counting the chars read through it
+	 */
+	private static final class CountingText implements CharSequence {
+
+		private final CharSequence text;
+
+		private final long maxSteps;
+
+		private long steps;
+
+		CountingText(CharSequence text, long maxSteps) {
+			this.text = text;
+			this.maxSteps = maxSteps;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (++steps > maxSteps) {
+				throw new ExceededException(steps);
+			}
+			return text.charAt(index);
+		}
+
+		@Override
+		public int length() {
+			return text.length();
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return text.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return text.toString();
+		}
+	}
+
+	private final long maxSteps;
+
+	/**
+	 * the number of steps spent by the abandoned entries
+	 */
+	private final Map<CompiledEntry, Long> exceeded = new ConcurrentHashMap<>();
+
+	/**
+	 * @param maxSteps the maximum number of chars read by each search, 0 or
+	 * less for no limit
+	 */
+	StepBudget(long maxSteps) {
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * @return the text to give to a new search of an entry, which counts the
+	 * chars read if the searches are limited
+	 */
+	CharSequence text(CharSequence text) {
+		return maxSteps > 0 ? new CountingText(text, maxSteps) : text;
+	}
+
+	/**
+	 * Abandons an entry whose search spent the budget
+	 */
+	void exceeded(CompiledEntry entry, ExceededException ex) {
+		exceeded.merge(entry, ex.getSteps(), Long::sum);
+	}
+
+	boolean isExceeded(CompiledEntry entry) {
+		return !exceeded.isEmpty() && exceeded.containsKey(entry);
+	}
+
+	/**
+	 * @return the abandoned entries, with the number of chars read by their
+	 * searches that spent the budget
+	 */
+	Map<CompiledEntry, Long> getExceeded() {
+		return Collections.unmodifiableMap(exceeded);
+	}
+}
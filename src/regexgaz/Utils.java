@@ -13,57 +13,16 @@ package regexgaz;
  
  */
 
-import gate.Gate;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Set;
-
 public class Utils {
 	
 
 	/**
-	 * Returns a string representation of the deterministic FSM graph using GML.
+	 * Returns a string representation of the trie of the literal entries of
+	 * an initialised gazetteer using GML, or null if they are matched by
+	 * their minimal automaton.
 	 */
-	public static String getFSMgml(Set<FSMState> fsmStates) {
-		String res = "graph[ \ndirected 1\n";
-		StringBuilder nodes = new StringBuilder(Gate.STRINGBUFFER_SIZE);
-		StringBuilder edges = new StringBuilder(Gate.STRINGBUFFER_SIZE);
-		Iterator<FSMState> fsmStatesIter = fsmStates.iterator();
-		while (fsmStatesIter.hasNext()) {
-			FSMState currentState = fsmStatesIter.next();
-			int stateIndex = currentState.getIndex();
-			nodes.append("node[ id ");
-			nodes.append(stateIndex);
-			nodes.append(" label \"");
-			nodes.append(stateIndex);
-			if (currentState.isFinal()) {
-				nodes.append(",F\\n");
-				nodes.append(currentState.getLookupSet());
-			}
-			nodes.append("\"  ]\n");
-			edges.append(currentState.getEdgesGML());
-		}
-		res += nodes.toString() + edges.toString() + "]\n";
-		return res;
-	} 
-	
-	
-
-	public static void printFsmStates(List<FSMState> states) {
-		StringBuilder sb = new StringBuilder();
-		//List<FSMState> states = new ArrayList(regexGazetteer.fsmStates);
-		Collections.sort(states, 
-				(FSMState state1, FSMState state2) -> {
-					int res = new Integer(state1.getIndex()).compareTo(state2.getIndex());
-					return res;
-				}
-		);
-		for (FSMState state : states) {
-			sb.append("\nSTATE : " + state.getIndex() + "\t");
-			sb.append("TRANSITIONS : " + (state.isFinal() ? "Final " : state.getEdgesGML()));
-		}
-		System.out.println(sb);
+	public static String getFSMgml(RegexGazetteer gazetteer) {
+		return gazetteer.literalTrie == null ? null : gazetteer.literalTrie.toGML();
 	}
 
 }
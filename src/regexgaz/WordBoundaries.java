@@ -0,0 +1,29 @@
+package regexgaz;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tells where the word boundaries of a text are. The boundaries are the ones
+ * matched by \b, so that the entries matched without their pattern follow the
+ * same rules as the others.
+ */
+final class WordBoundaries {
+
+	private static final Pattern BOUNDARY = Pattern.compile("\\b");
+
+	private final Matcher matcher;
+
+	WordBoundaries(CharSequence text) {
+		matcher = BOUNDARY.matcher(text);
+		matcher.useTransparentBounds(true);
+	}
+
+	/**
+	 * Checks whether there is a word boundary at an offset of the text
+	 */
+	boolean isBoundary(int offset) {
+		matcher.region(offset, offset);
+		return matcher.lookingAt();
+	}
+}
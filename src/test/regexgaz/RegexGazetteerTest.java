@@ -9,18 +9,36 @@ import static gate.Utils.inDocumentOrder;
 import gate.creole.ExecutionException;
 import gate.creole.ResourceInstantiationException;
 import gate.util.GateException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
+import java.util.Map;
+import regexgaz.BatchReport;
+import regexgaz.EntryCost;
+import regexgaz.GazetteerEvent;
+import regexgaz.GazetteerNode;
+import regexgaz.LinearNode;
 import regexgaz.RegexGazetteer;
+import regexgaz.SharedDefaultGazetteer;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TestName;
 import static org.junit.Assert.*;
 import static gate.Utils.stringFor;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -43,10 +61,7 @@ public class RegexGazetteerTest {
 				+ testName.getMethodName()
 				+"\n===============================\n");
 		Gate.init();
-		regexGaz = new RegexGazetteer();
-		URL url = getClass().getResource(LISTS_PATH);
-		regexGaz.setListsURL(url);
-		regexGaz.setGazetteerFeatureSeparator("@");
+		regexGaz = newGazetteer(getClass().getResource(LISTS_PATH));
 		regexGaz.init();
 
 	}
@@ -98,6 +113,27 @@ public class RegexGazetteerTest {
 		assertEquals(as2.size(),6);
 	}
 	
+	@Test
+	public void testLongestMatchOnlyExistingAnnotations() throws ResourceInstantiationException, ExecutionException {
+		String text = "Buenos días amigo hola madrid";
+		System.out.println("Text : " + text);
+		Document doc = Factory.newDocument(text);
+		//replaced by the longer match of "Buen.{0,2} dí.{1,2} amig(o|a)"
+		doc.getAnnotations().add(0L, 11L, "Lookup", Factory.newFeatureMap());
+		//covers the match of "hola", but not the one of "madrid" which has another type
+		doc.getAnnotations().add(18L, 29L, "Lookup", Factory.newFeatureMap());
+		regexGaz.setDocument(doc);
+		regexGaz.setLongestMatchOnly(true);
+		regexGaz.execute();
+		List<String> annotations = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(doc.getAnnotations())) {
+			annotations.add(a.getType() + " " + a.getStartNode().getOffset() + "-"
+					+ a.getEndNode().getOffset() + " " + a.getFeatures().get("gazEntry"));
+		}
+		assertEquals(Arrays.asList("Lookup 0-17 Buen.{0,2} dí.{1,2} amig(o|a)", "Lookup 18-29 null",
+				"City 23-29 madrid"), annotations);
+	}
+
 	@Test
 	public void testAddStringFeature() throws ResourceInstantiationException, ExecutionException {
 		String text = "madrid";
@@ -118,6 +154,35 @@ public class RegexGazetteerTest {
 		changeAddEntryFeat(doc);
 	}
 
+	@Test
+	public void testEntryFeatures() throws ResourceInstantiationException, ExecutionException {
+		String text = "Hola hola";
+		Document doc = Factory.newDocument(text);
+		regexGaz.setLongestMatchOnly(false);
+		regexGaz.setDocument(doc);
+		regexGaz.execute();
+		List<Annotation> as = inDocumentOrder(doc.getAnnotations());
+		System.out.println("Text : " + text);
+		assertEquals(2, as.size());
+		for (Annotation a : as) {
+			System.out.println(stringFor(doc, a) + " : " + a.getFeatures());
+			assertEquals("greeting", a.getFeatures().get("majorType"));
+			assertEquals("salut", a.getFeatures().get("fr"));
+			assertEquals("ciao", a.getFeatures().get("it"));
+			assertEquals(stringFor(doc, a), a.getFeatures().get("string"));
+		}
+		//the features computed once for the entry are not shared by its annotations
+		as.get(0).getFeatures().put("fr", "bonjour");
+		assertEquals("salut", as.get(1).getFeatures().get("fr"));
+	}
+
+	@Test
+	public void testDistinctLookups() {
+		//the entries without features of each list share their lookup
+		System.out.println("Distinct lookups : " + regexGaz.getDistinctLookups());
+		assertEquals(4, regexGaz.getDistinctLookups());
+	}
+
 	@Test
 	public void testAnnotationType() throws ResourceInstantiationException, ExecutionException {
 		String text = "madrid hola";
@@ -132,6 +197,518 @@ public class RegexGazetteerTest {
 		
 	}
 
+	@Test
+	public void testLiteralEntries() throws ResourceInstantiationException, ExecutionException {
+		String text = "new ny \t city madrid nyc madrid";
+		System.out.println("Text : " + text);
+		Document doc = Factory.newDocument(text);
+		regexGaz.setDocument(doc);
+		regexGaz.setLongestMatchOnly(false);
+		regexGaz.execute();
+		List<String> matches = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(doc.getAnnotations())) {
+			System.out.println(stringFor(doc, a) + " ===== Matched with entry : " + a.getFeatures().get("gazEntry"));
+			matches.add(a.getFeatures().get("gazEntry") + " " + a.getStartNode().getOffset() + "-" + a.getEndNode().getOffset());
+		}
+		Collections.sort(matches);
+		//any sequence of whitespace matches the space of "ny city", "nyc" is not a whole word match of "ny"
+		assertEquals(Arrays.asList("madrid 14-20", "madrid 25-31", "ny 4-6", "ny city 4-13"), matches);
+	}
+
+	@Test
+	public void testTrieFootprint() {
+		//the literal entries are held by a few arrays indexed by state
+		System.out.println("Trie : " + regexGaz.getTrieStates() + " states, "
+				+ regexGaz.getTrieFootprint() + " bytes");
+		assertTrue(regexGaz.getTrieStates() > 1);
+		assertTrue(regexGaz.getTrieFootprint() > 12L * regexGaz.getTrieStates());
+		//and have no compiled pattern
+		final List<String> literals = new ArrayList<>();
+		regexGaz.setLongestMatchOnly(true);
+		regexGaz.match("new ny city madrid", (entry, start, end) -> {
+			assertTrue(entry.isLiteral());
+			assertNull(entry.getPattern());
+			literals.add(entry.getEntry());
+		});
+		assertEquals(Arrays.asList("ny city", "madrid"), literals);
+	}
+
+	@Test
+	public void testMinimizeLiterals() throws ResourceInstantiationException, ExecutionException {
+		String text = "new ny \t city madrid nyc madrid HOLA! Buen día Buenos días amigo";
+		RegexGazetteer minimalGaz = newGazetteer(regexGaz.getListsURL());
+		minimalGaz.setMinimizeLiterals(true);
+		minimalGaz.init();
+		System.out.println("Minimal automaton : " + minimalGaz.getTrieStates() + " states, trie : "
+				+ regexGaz.getTrieStates() + " states");
+		//the common suffixes of the entries are shared
+		assertTrue(minimalGaz.getTrieStates() < regexGaz.getTrieStates());
+		assertSameAnnotations(text, regexGaz, minimalGaz);
+	}
+
+	@Test
+	public void testUseAutomaton() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga";
+		System.out.println("Text : " + text);
+		RegexGazetteer automatonGaz = newGazetteer(regexGaz.getListsURL());
+		automatonGaz.setUseAutomaton(true);
+		automatonGaz.init();
+		System.out.println("Entries not handled by the automaton : " + automatonGaz.getUnsupportedEntries());
+		assertSameAnnotations(text, regexGaz, automatonGaz);
+	}
+
+	@Test
+	public void testParallelism() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga new ny city";
+		System.out.println("Text : " + text);
+		RegexGazetteer parallelGaz = duplicate(regexGaz);
+		parallelGaz.setParallelism(4);
+		//the annotations are added in the same order
+		assertSameAnnotations(text, regexGaz, parallelGaz);
+		parallelGaz.cleanup();
+	}
+
+	@Test
+	public void testChunkSize() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga new ny city";
+		System.out.println("Text : " + text);
+		System.out.println("Entries matched on the whole documents : " + regexGaz.getUnchunkedEntries());
+		//the chunk limits fall inside the matches
+		for (int chunkSize : new int[]{3, 7, 16}) {
+			RegexGazetteer chunkedGaz = duplicate(regexGaz);
+			chunkedGaz.setParallelism(4);
+			chunkedGaz.setChunkSize(chunkSize);
+			assertSameAnnotations(text, regexGaz, chunkedGaz);
+			chunkedGaz.cleanup();
+		}
+	}
+
+	@Test
+	public void testLoadingThreads() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga";
+		System.out.println("Text : " + text);
+		regexGaz.setLoadingThreads(1);
+		regexGaz.init();
+		//the lists loaded several at once give the same entries, in the same order
+		RegexGazetteer parallelGaz = newGazetteer(regexGaz.getListsURL());
+		parallelGaz.setLoadingThreads(4);
+		parallelGaz.init();
+		assertSameAnnotations(text, regexGaz, parallelGaz);
+	}
+
+	@Test
+	public void testRegexEngine() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga";
+		System.out.println("Text : " + text);
+		RegexGazetteer linearGaz = newGazetteer(regexGaz.getListsURL());
+		linearGaz.setRegexEngine("linear");
+		linearGaz.init();
+		assertTrue(linearGaz.getUnsupportedLinearEntries().isEmpty());
+		assertSameAnnotations(text, regexGaz, linearGaz);
+	}
+
+	@Test
+	public void testRegexEngineSurrogates() throws ResourceInstantiationException, ExecutionException,
+			IOException {
+		String text = "a\uD83D\uDE00_ hola \uD83D\uDE00 amigo";
+		Path dir = copyResources();
+		Files.write(dir.resolve("lists.def"), "\nsymbols.lst:symbol".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		//as in java.util.regex, the expressions with a class that may match
+		//a supplementary character start no match between the two chars of a
+		//surrogate pair, the other ones may
+		Files.write(dir.resolve("symbols.lst"), "\\B.\n\\B\\W\n\\B[\\uDC00-\\uDFFF]".getBytes(StandardCharsets.UTF_8));
+		RegexGazetteer javaGaz = newGazetteer(dir.resolve("lists.def").toUri().toURL());
+		javaGaz.init();
+		RegexGazetteer linearGaz = newGazetteer(javaGaz.getListsURL());
+		linearGaz.setRegexEngine("linear");
+		linearGaz.init();
+		assertTrue(linearGaz.getUnsupportedLinearEntries().isEmpty());
+		assertSameAnnotations(text, javaGaz, linearGaz);
+		List<String> matches = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(annotate(linearGaz, text).getAnnotations())) {
+			matches.add(a.getFeatures().get("gazEntry") + " " + a.getStartNode().getOffset() + "-" + a.getEndNode().getOffset());
+		}
+		System.out.println(matches);
+		assertTrue(matches.contains("\\B. 2-3"));
+		assertFalse(matches.contains("\\B\\W 2-3"));
+	}
+
+	@Test
+	public void testMaxEntrySteps() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid";
+		System.out.println("Text : " + text);
+		Document doc = Factory.newDocument(text);
+		regexGaz.setDocument(doc);
+		regexGaz.setLongestMatchOnly(false);
+		//no regular expression entry can be searched with a single char
+		regexGaz.setMaxEntrySteps(1L);
+		regexGaz.execute();
+		List<String> matches = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(doc.getAnnotations())) {
+			matches.add((String) a.getFeatures().get("gazEntry"));
+		}
+		System.out.println("Abandoned entries : " + regexGaz.getAbandonedEntries());
+		assertEquals(Arrays.asList("amigo", "madrid"), matches);
+		assertEquals(3, regexGaz.getAbandonedEntries().size());
+		for (EntryCost cost : regexGaz.getAbandonedEntries().values()) {
+			assertEquals(1, cost.getDocuments());
+		}
+		regexGaz.resetAbandonedEntries();
+		doc.getAnnotations().clear();
+		regexGaz.setMaxEntrySteps(0L);
+		regexGaz.execute();
+		assertTrue(regexGaz.getAbandonedEntries().isEmpty());
+		assertEquals(7, doc.getAnnotations().size());
+	}
+
+	@Test
+	public void testMatch() throws ResourceInstantiationException, ExecutionException, InterruptedException {
+		final String text = "HOLA! Buen día Buenos días amigo hola madrid";
+		System.out.println("Text : " + text);
+		for (boolean longestMatchOnly : new boolean[]{true, false}) {
+			Document doc = Factory.newDocument(text);
+			regexGaz.setDocument(doc);
+			regexGaz.setLongestMatchOnly(longestMatchOnly);
+			regexGaz.execute();
+			final List<String> expected = new ArrayList<>();
+			for (Annotation a : doc.getAnnotations()) {
+				expected.add(a.getStartNode().getOffset() + "-" + a.getEndNode().getOffset() + " "
+						+ a.getFeatures().get("gazEntry"));
+			}
+			Collections.sort(expected);
+			System.out.println("Matches : " + expected);
+			//the raw matches are the annotated ones, also when searched concurrently
+			final List<List<String>> found = Collections.synchronizedList(new ArrayList<List<String>>());
+			List<Thread> threads = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				//any char sequence can be searched without being copied
+				final CharSequence sequence = t % 2 == 0 ? text : new StringBuilder(text);
+				Thread thread = new Thread() {
+					@Override
+					public void run() {
+						final List<String> matches = new ArrayList<>();
+						regexGaz.match(sequence, (entry, start, end) -> matches.add(start + "-" + end + " " + entry.getEntry()));
+						Collections.sort(matches);
+						found.add(matches);
+					}
+				};
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(4, found.size());
+			for (List<String> matches : found) {
+				assertEquals(expected, matches);
+			}
+		}
+	}
+
+	@Test
+	public void testExecuteBatch() throws ResourceInstantiationException, ExecutionException {
+		String[] texts = {"HOLA! Buen día", "Buenos días amigo hola madrid", "london", "nothing"};
+		List<Document> docs = new ArrayList<>();
+		List<List<String>> expected = new ArrayList<>();
+		int annotations = 0;
+		for (String text : texts) {
+			Document doc = Factory.newDocument(text);
+			regexGaz.setDocument(doc);
+			regexGaz.execute();
+			expected.add(describe(doc));
+			annotations += doc.getAnnotations().size();
+			docs.add(Factory.newDocument(text));
+		}
+		//a document that cannot be annotated does not stop the others
+		docs.add(null);
+		BatchReport report = regexGaz.executeBatch(docs);
+		System.out.println("Report : " + report);
+		assertEquals(texts.length, report.getDocuments());
+		assertEquals(annotations, report.getMatches());
+		assertEquals(1, report.getFailures().size());
+		assertTrue(report.getFailures().containsKey(null));
+		for (int i = 0; i < texts.length; i++) {
+			assertEquals(expected.get(i), describe(docs.get(i)));
+		}
+	}
+
+	@Test
+	public void testTypeFilters() throws ResourceInstantiationException, ExecutionException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid london";
+		Document doc = annotate(regexGaz, text);
+		List<String> cities = new ArrayList<>();
+		for (String annotation : describe(doc)) {
+			if (annotation.startsWith("City ")) {
+				cities.add(annotation);
+			}
+		}
+		assertFalse(cities.isEmpty());
+		//only the lists of the selected types are matched
+		regexGaz.setMajorTypes(Arrays.asList("location"));
+		assertEquals(cities, describe(annotate(regexGaz, text)));
+		regexGaz.setMajorTypes(null);
+		regexGaz.setListNames(Arrays.asList("cities.lst"));
+		assertEquals(cities, describe(annotate(regexGaz, text)));
+		//the lists left out by init() are compiled when first selected
+		RegexGazetteer filteredGaz = newGazetteer(regexGaz.getListsURL());
+		filteredGaz.setAnnotationTypes(Arrays.asList("City"));
+		filteredGaz.init();
+		assertEquals(cities, describe(annotate(filteredGaz, text)));
+		filteredGaz.setAnnotationTypes(null);
+		Document allDoc = annotate(filteredGaz, text);
+		assertEquals(describe(doc), describe(allDoc));
+		assertEquals(idsInDocumentOrder(doc), idsInDocumentOrder(allDoc));
+	}
+
+	@Test
+	public void testSnapshot() throws ResourceInstantiationException, ExecutionException, IOException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid barcelona";
+		Path dir = copyResources();
+		Path snapshot = dir.resolve("lists.snapshot");
+		//no snapshot yet: the lists are read and the snapshot written
+		RegexGazetteer gaz = snapshotGazetteer(dir, snapshot);
+		assertFalse(gaz.isSnapshotLoaded());
+		assertTrue(Files.exists(snapshot));
+		//the snapshot gives the same entries, in the same order
+		RegexGazetteer snapshotGaz = snapshotGazetteer(dir, snapshot);
+		assertTrue(snapshotGaz.isSnapshotLoaded());
+		assertSameAnnotations(text, gaz, snapshotGaz);
+		//a list changed: the snapshot is out of date
+		Files.write(dir.resolve("cities.lst"), "\nbarcelona".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		RegexGazetteer changedGaz = snapshotGazetteer(dir, snapshot);
+		assertFalse(changedGaz.isSnapshotLoaded());
+		gaz.setLongestMatchOnly(true);
+		assertEquals(annotate(gaz, text).getAnnotations().size() + 1,
+				annotate(changedGaz, text).getAnnotations().size());
+		assertTrue(snapshotGazetteer(dir, snapshot).isSnapshotLoaded());
+	}
+
+	@Test
+	public void testSnapshotFeatures() throws ResourceInstantiationException, IOException {
+		Path dir = copyResources();
+		Path snapshot = dir.resolve("lists.snapshot");
+		RegexGazetteer gaz = newGazetteer(dir.resolve("lists.def").toUri().toURL());
+		gaz.init();
+		Map<String, Object> features = firstFeatures(gaz);
+		//a feature without value is read without value, in the same order
+		features.put("es", null);
+		gaz.writeSnapshot(snapshot.toFile());
+		RegexGazetteer snapshotGaz = snapshotGazetteer(dir, snapshot);
+		assertTrue(snapshotGaz.isSnapshotLoaded());
+		Map<String, Object> read = firstFeatures(snapshotGaz);
+		assertEquals(features, read);
+		assertEquals(new ArrayList<>(features.keySet()), new ArrayList<>(read.keySet()));
+		//a feature whose value is not a string is not written
+		features.put("es", 1);
+		try {
+			gaz.writeSnapshot(snapshot.toFile());
+			fail("Snapshot written with a feature that is not a string");
+		} catch (IOException ex) {
+			System.out.println("Snapshot not written: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * @return the number of entries of a list of the definition of a
+	 * gazetteer
+	 */
+	private static int listSize(RegexGazetteer gaz, String listName) {
+		LinearNode node = gaz.getLinearDefinition().getNodesByListNames().get(listName);
+		return gaz.getLinearDefinition().getListsByNode().get(node).size();
+	}
+
+	/**
+	 * @return the features of the first entry having features, in the order
+	 * of the definition
+	 */
+	private static Map<String, Object> firstFeatures(RegexGazetteer gaz) {
+		for (LinearNode node : gaz.getLinearDefinition().getNodes()) {
+			for (GazetteerNode gazNode : gaz.getLinearDefinition().getListsByNode().get(node)) {
+				if (gazNode.getFeatureMap() != null) {
+					return gazNode.getFeatureMap();
+				}
+			}
+		}
+		throw new AssertionError("No entry with features");
+	}
+
+	@Test
+	public void testWatchLists() throws ResourceInstantiationException, ExecutionException, IOException,
+			InterruptedException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid barcelona";
+		Path dir = copyResources();
+		RegexGazetteer gaz = newGazetteer(dir.resolve("lists.def").toUri().toURL());
+		gaz.setWatchLists(true);
+		final BlockingQueue<GazetteerEvent> reloads = new LinkedBlockingQueue<>();
+		gaz.addGazetteerListener(e -> {
+			if (e.getType() == GazetteerEvent.RELOAD) {
+				reloads.add(e);
+			}
+		});
+		gaz.init();
+		RegexGazetteer copy = duplicate(gaz);
+		assertEquals(0, gaz.getListsVersion());
+		Document doc = annotate(gaz, text);
+		//a list changed is reloaded, and replaces the previous one for the
+		//gazetteer and its duplicates
+		Files.write(dir.resolve("cities.lst"), "\nbarcelona".getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.APPEND);
+		GazetteerEvent event = reloads.poll(30, TimeUnit.SECONDS);
+		assertNotNull(event);
+		assertEquals(1, event.getVersion());
+		assertEquals(1, event.getLists().size());
+		assertEquals("cities.lst", event.getLists().get(0).getList());
+		assertEquals(1, gaz.getListsVersion());
+		assertEquals(1, copy.getListsVersion());
+		//the same as a gazetteer initialised from the changed lists
+		RegexGazetteer changedGaz = newGazetteer(gaz.getListsURL());
+		changedGaz.init();
+		assertEquals(doc.getAnnotations().size() + 1, annotate(changedGaz, text).getAnnotations().size());
+		for (RegexGazetteer reloaded : new RegexGazetteer[]{gaz, copy}) {
+			assertSameAnnotations(text, changedGaz, reloaded);
+			//with the statistics and the lists of the definition of the new version
+			assertEquals(changedGaz.getTrieStates(), reloaded.getTrieStates());
+			assertEquals(changedGaz.getDistinctLookups(), reloaded.getDistinctLookups());
+			assertEquals(listSize(changedGaz, "cities.lst"), listSize(reloaded, "cities.lst"));
+		}
+		gaz.cleanup();
+	}
+
+	@Test
+	public void testConcurrentInit() throws ResourceInstantiationException, ExecutionException,
+			IOException, InterruptedException {
+		String text = "HOLA! Buen día Buenos días amigo hola madrid Buenos días amiga";
+		final Path dir = copyResources();
+		final Path snapshot = dir.resolve("lists.snapshot");
+		//gazetteers initialised at once, half of them sharing a snapshot, are
+		//the same as one initialised alone
+		final List<RegexGazetteer> gazetteers = Collections.synchronizedList(new ArrayList<RegexGazetteer>());
+		final List<Exception> failures = Collections.synchronizedList(new ArrayList<Exception>());
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			final boolean useSnapshot = t % 2 == 0;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						RegexGazetteer gaz;
+						if (useSnapshot) {
+							gaz = snapshotGazetteer(dir, snapshot);
+						} else {
+							gaz = newGazetteer(regexGaz.getListsURL());
+							gaz.init();
+						}
+						gazetteers.add(gaz);
+					} catch (Exception ex) {
+						failures.add(ex);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(Collections.emptyList(), failures);
+		assertEquals(8, gazetteers.size());
+		for (RegexGazetteer gaz : gazetteers) {
+			assertEquals(regexGaz.getTrieStates(), gaz.getTrieStates());
+			assertSameAnnotations(text, regexGaz, gaz);
+		}
+		assertTrue(snapshotGazetteer(dir, snapshot).isSnapshotLoaded());
+	}
+
+	/**
+	 * @return a gazetteer of the lists of a definition, with the feature
+	 * separator of the test lists, to be initialised
+	 */
+	private static RegexGazetteer newGazetteer(URL listsURL) {
+		RegexGazetteer gaz = new RegexGazetteer();
+		gaz.setListsURL(listsURL);
+		gaz.setGazetteerFeatureSeparator("@");
+		return gaz;
+	}
+
+	/**
+	 * @return a duplicate of a gazetteer sharing its compiled lists
+	 */
+	private static RegexGazetteer duplicate(RegexGazetteer gaz) throws ResourceInstantiationException {
+		SharedDefaultGazetteer copy = new SharedDefaultGazetteer();
+		copy.setBootstrapGazetteer(gaz);
+		copy.init();
+		return copy;
+	}
+
+	/**
+	 * @return a copy of the test lists in a new directory, which the test
+	 * may modify
+	 */
+	private Path copyResources() throws IOException {
+		Path dir = Files.createTempDirectory("regexgaz");
+		for (String file : new String[]{"lists.def", "greetings.lst", "cities.lst"}) {
+			try (InputStream in = getClass().getResourceAsStream("resources/" + file)) {
+				Files.copy(in, dir.resolve(file));
+			}
+		}
+		return dir;
+	}
+
+	private static RegexGazetteer snapshotGazetteer(Path dir, Path snapshot)
+			throws ResourceInstantiationException, MalformedURLException {
+		RegexGazetteer gaz = newGazetteer(dir.resolve("lists.def").toUri().toURL());
+		gaz.setSnapshotURL(snapshot.toUri().toURL());
+		gaz.init();
+		return gaz;
+	}
+
+	/**
+	 * @return a new document with a text, annotated by a gazetteer
+	 */
+	private static Document annotate(RegexGazetteer gaz, String text)
+			throws ResourceInstantiationException, ExecutionException {
+		Document doc = Factory.newDocument(text);
+		gaz.setDocument(doc);
+		gaz.execute();
+		return doc;
+	}
+
+	/**
+	 * Checks that two gazetteers add the same annotations to a text, in the
+	 * same order, with and without longestMatchOnly
+	 */
+	private static void assertSameAnnotations(String text, RegexGazetteer expected, RegexGazetteer actual)
+			throws ResourceInstantiationException, ExecutionException {
+		for (boolean longestMatchOnly : new boolean[]{true, false}) {
+			expected.setLongestMatchOnly(longestMatchOnly);
+			actual.setLongestMatchOnly(longestMatchOnly);
+			Document doc = annotate(expected, text);
+			Document actualDoc = annotate(actual, text);
+			assertEquals(describe(doc), describe(actualDoc));
+			assertEquals(idsInDocumentOrder(doc), idsInDocumentOrder(actualDoc));
+		}
+	}
+
+	private static List<Integer> idsInDocumentOrder(Document doc) {
+		List<Integer> ids = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(doc.getAnnotations())) {
+			ids.add(a.getId());
+		}
+		return ids;
+	}
+
+	private static List<String> describe(Document doc) {
+		List<String> annotations = new ArrayList<>();
+		for (Annotation a : inDocumentOrder(doc.getAnnotations())) {
+			annotations.add(a.getType() + " " + a.getStartNode().getOffset() + "-"
+					+ a.getEndNode().getOffset() + " " + a.getFeatures());
+		}
+		Collections.sort(annotations);
+		return annotations;
+	}
+
 	private void changeAddStringFeat(Document doc) throws ExecutionException {
 		doc.getAnnotations().clear();
 		regexGaz.cleanup();